@@ -2,14 +2,20 @@ package com.guildwars.classes;
 
 import com.guildwars.GuildWars;
 import com.guildwars.classes.commands.ClassCommand;
+import com.guildwars.classes.config.ConfigManager;
 import com.guildwars.classes.integration.GuildIntegration;
 import com.guildwars.classes.listeners.ClassAbilityListener;
 import com.guildwars.classes.listeners.ClassSelectionListener;
+import com.guildwars.classes.listeners.GuildMembershipListener;
+import com.guildwars.classes.listeners.PlayerGridListener;
 import com.guildwars.classes.managers.ClassManager;
+import com.guildwars.classes.scheduler.TaskScheduler;
 import com.guildwars.classes.storage.ClassStorage;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.logging.Level;
+
 /**
  * Main class for the GuildWars Classes addon.
  * This addon adds player classes with unique abilities to the GuildWars plugin.
@@ -17,6 +23,8 @@ import org.bukkit.plugin.java.JavaPlugin;
 public class GuildWarsClasses extends JavaPlugin {
 
     private static GuildWarsClasses instance;
+    private TaskScheduler taskScheduler;
+    private ConfigManager configManager;
     private ClassStorage classStorage;
     private ClassManager classManager;
     private GuildIntegration guildIntegration;
@@ -27,6 +35,9 @@ public class GuildWarsClasses extends JavaPlugin {
         // Set instance
         instance = this;
         
+        // Pick the scheduler for Paper or Folia
+        taskScheduler = new TaskScheduler(this);
+        
         // Save default config
         saveDefaultConfig();
         
@@ -37,6 +48,9 @@ public class GuildWarsClasses extends JavaPlugin {
             return;
         }
         
+        // Parse class settings
+        configManager = new ConfigManager(this);
+        
         // Initialize storage
         classStorage = new ClassStorage(this);
         
@@ -52,14 +66,26 @@ public class GuildWarsClasses extends JavaPlugin {
         // Register event listeners
         registerListeners();
         
+        // Load class data in the background; commands and listeners wait until it is ready
+        classManager.load().exceptionally(e -> {
+            getLogger().log(Level.SEVERE, "Failed to load class data! Disabling GuildWars Classes addon.", e);
+            taskScheduler.runGlobal(() -> getServer().getPluginManager().disablePlugin(this));
+            return null;
+        });
+        
         getLogger().info("GuildWars Classes addon has been enabled!");
     }
 
     @Override
     public void onDisable() {
-        // Save data when plugin is disabled
+        // Class effects outlive the plugin on players who stay online through a reload
+        if (classManager != null) {
+            classManager.clearAllEffects();
+        }
+        
+        // Flush pending class changes and stop the storage thread
         if (classStorage != null) {
-            classStorage.saveData();
+            classStorage.shutdown();
         }
         
         getLogger().info("GuildWars Classes addon has been disabled!");
@@ -98,6 +124,12 @@ public class GuildWarsClasses extends JavaPlugin {
         // Register class selection listener
         Bukkit.getPluginManager().registerEvents(new ClassSelectionListener(this), this);
         
+        // Register player grid listener
+        Bukkit.getPluginManager().registerEvents(new PlayerGridListener(this), this);
+        
+        // Register guild membership listener
+        Bukkit.getPluginManager().registerEvents(new GuildMembershipListener(this), this);
+        
         getLogger().info("Event listeners registered successfully.");
     }
     
@@ -110,6 +142,24 @@ public class GuildWarsClasses extends JavaPlugin {
         return instance;
     }
     
+    /**
+     * Get the task scheduler.
+     * 
+     * @return The task scheduler
+     */
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+    
+    /**
+     * Get the config manager.
+     * 
+     * @return The config manager
+     */
+    public ConfigManager getConfigManager() {
+        return configManager;
+    }
+    
     /**
      * Get the class storage.
      * 
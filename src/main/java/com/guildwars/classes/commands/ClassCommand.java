@@ -1,15 +1,31 @@
 package com.guildwars.classes.commands;
 
 import com.guildwars.classes.GuildWarsClasses;
+import com.guildwars.classes.integration.CircuitBreaker;
+import com.guildwars.classes.integration.GuildIntegration;
+import com.guildwars.classes.integration.GuildMembershipCache;
+import com.guildwars.classes.integration.GuildRelationMatrix;
+import com.guildwars.classes.managers.AbilityExecutor;
+import com.guildwars.classes.managers.CooldownService;
+import com.guildwars.classes.managers.EffectReconciler;
+import com.guildwars.classes.managers.JoinQueue;
+import com.guildwars.classes.managers.PlayerGrid;
+import com.guildwars.classes.managers.PlayerSession;
+import com.guildwars.classes.managers.QualityGovernor;
 import com.guildwars.classes.model.PlayerClass;
+import com.guildwars.classes.storage.ClassStorage;
 import net.md_5.bungee.api.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
 
 /**
  * Command handler for the /class command.
@@ -29,6 +45,24 @@ public class ClassCommand implements CommandExecutor {
     
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        // Admin commands can also be used from the console
+        if (args.length > 0 && args[0].equalsIgnoreCase("stats")) {
+            handleStats(sender);
+            return true;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("reload")) {
+            handleReload(sender);
+            return true;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("guildwars")) {
+            handleGuildWars(sender, Arrays.copyOfRange(args, 1, args.length));
+            return true;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("quality")) {
+            handleQuality(sender, Arrays.copyOfRange(args, 1, args.length));
+            return true;
+        }
+        
         if (!(sender instanceof Player)) {
             sender.sendMessage(ChatColor.RED + "This command can only be used by players.");
             return true;
@@ -36,9 +70,16 @@ public class ClassCommand implements CommandExecutor {
         
         Player player = (Player) sender;
         
+        // Resolve the player's session once; it only exists once class data is ready
+        PlayerSession session = plugin.getClassManager().isReady() ? plugin.getClassManager().getSession(player.getUniqueId()) : null;
+        if (session == null) {
+            player.sendMessage(ChatColor.YELLOW + "Class data is still loading, please try again in a moment.");
+            return true;
+        }
+        
         if (args.length == 0) {
             // Show player's current class
-            showPlayerClass(player);
+            showPlayerClass(session);
             return true;
         }
         
@@ -54,7 +95,7 @@ public class ClassCommand implements CommandExecutor {
                 handleSelect(player, subArgs);
                 break;
             case "info":
-                handleInfo(player, subArgs);
+                handleInfo(session, subArgs);
                 break;
             case "remove":
             case "reset":
@@ -62,11 +103,11 @@ public class ClassCommand implements CommandExecutor {
                 break;
             case "ability1":
             case "primary":
-                handlePrimaryAbility(player);
+                handlePrimaryAbility(session);
                 break;
             case "ability2":
             case "secondary":
-                handleSecondaryAbility(player);
+                handleSecondaryAbility(session);
                 break;
             default:
                 player.sendMessage(ChatColor.RED + "Unknown command. Use /class for help.");
@@ -76,13 +117,193 @@ public class ClassCommand implements CommandExecutor {
         return true;
     }
     
+    /**
+     * Handle the stats command.
+     *
+     * @param sender The command sender
+     */
+    private void handleStats(CommandSender sender) {
+        if (!sender.hasPermission("guildwarsclasses.admin")) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+            return;
+        }
+        
+        ClassStorage storage = plugin.getClassStorage();
+        
+        sender.sendMessage(ChatColor.GOLD + "=== Class Storage ===");
+        sender.sendMessage(ChatColor.YELLOW + "Pending Writes: " + ChatColor.WHITE + storage.getQueueDepth());
+        sender.sendMessage(ChatColor.YELLOW + "Backend: " + ChatColor.WHITE + storage.getBackend().getName() + " (" + storage.getBackend().getStatus() + ")");
+        sender.sendMessage(ChatColor.YELLOW + "Flushes: " + ChatColor.WHITE + storage.getFlushCount());
+        sender.sendMessage(ChatColor.YELLOW + "Last Flush: " + ChatColor.WHITE + String.format("%.2f ms (%d players)", storage.getLastFlushMillis(), storage.getLastFlushSize()));
+        sender.sendMessage(ChatColor.YELLOW + "Average Flush: " + ChatColor.WHITE + String.format("%.2f ms", storage.getAverageFlushMillis()));
+        
+        CooldownService cooldowns = plugin.getClassManager().getCooldownService();
+        sender.sendMessage(ChatColor.GOLD + "=== Cooldowns ===");
+        sender.sendMessage(ChatColor.YELLOW + "Active: " + ChatColor.WHITE + cooldowns.getActiveCount() + " (" + cooldowns.getPlayerCount() + " players)");
+        sender.sendMessage(ChatColor.YELLOW + "Sessions: " + ChatColor.WHITE + plugin.getClassManager().getSessions().size());
+        
+        EffectReconciler effects = plugin.getClassManager().getEffectReconciler();
+        sender.sendMessage(ChatColor.YELLOW + "Effect Updates: " + ChatColor.WHITE + effects.getReconciled()
+                + " (" + effects.getModifiersChanged() + " modifiers changed, " + effects.getModifiersRestored() + " restored)");
+        
+        JoinQueue joins = plugin.getClassManager().getJoinQueue();
+        sender.sendMessage(ChatColor.YELLOW + "Join Queue: " + ChatColor.WHITE + joins.getQueued() + " waiting (peak " + joins.getPeakQueued()
+                + "), " + joins.getHandled() + " handled, " + joins.getLastTickHandled() + " last tick");
+        sender.sendMessage(ChatColor.YELLOW + "Join Wait: " + ChatColor.WHITE + String.format("%.2f ms average, %.2f ms longest",
+                joins.getAverageWaitMillis(), joins.getMaxWaitMillis()));
+        
+        PlayerGrid grid = plugin.getClassManager().getPlayerGrid();
+        sender.sendMessage(ChatColor.YELLOW + "Player Grid: " + ChatColor.WHITE + grid.size() + " players in " + grid.getCellCount() + " chunks");
+        sender.sendMessage(ChatColor.YELLOW + "Particles Sent: " + ChatColor.WHITE + plugin.getClassManager().getParticleRenderer().getParticlesSent());
+        
+        AbilityExecutor executor = plugin.getClassManager().getAbilityExecutor();
+        sender.sendMessage(ChatColor.GOLD + "=== Ability Executor ===");
+        sender.sendMessage(ChatColor.YELLOW + "Casts: " + ChatColor.WHITE + executor.getTotalCasts()
+                + " (last tick " + executor.getLastTickCasts() + ", peak " + executor.getPeakTickCasts() + " per tick)");
+        sender.sendMessage(ChatColor.YELLOW + "Queued: " + ChatColor.WHITE + executor.getQueuedCasts() + " casts, " + executor.getRunningTasks() + " running effects");
+        sender.sendMessage(ChatColor.YELLOW + "Last Tick: " + ChatColor.WHITE + String.format("%.2f ms", executor.getLastTickMillis()));
+        sender.sendMessage(ChatColor.YELLOW + "Budget Overruns: " + ChatColor.WHITE + executor.getBudgetOverruns() + " ticks (" + executor.getDeferredCasts() + " casts deferred)");
+    }
+    
+    /**
+     * Handle the reload command. The config is re-read off the main thread and the
+     * new settings take effect with the next ability used.
+     *
+     * @param sender The command sender
+     */
+    private void handleReload(CommandSender sender) {
+        if (!sender.hasPermission("guildwarsclasses.admin")) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+            return;
+        }
+        
+        sender.sendMessage(ChatColor.YELLOW + "Reloading class settings...");
+        plugin.getConfigManager().reloadAsync().whenComplete((config, error) ->
+                plugin.getTaskScheduler().runForSender(sender, () -> {
+                    if (error != null) {
+                        plugin.getLogger().log(Level.SEVERE, "Failed to reload class settings", error);
+                        sender.sendMessage(ChatColor.RED + "Failed to reload class settings. See the console for details.");
+                    } else if (!config.warnings().isEmpty()) {
+                        sender.sendMessage(ChatColor.GOLD + "Class settings reloaded with " + config.warnings().size() + " invalid values replaced by defaults:");
+                        for (String warning : config.warnings()) {
+                            sender.sendMessage(ChatColor.YELLOW + "- " + ChatColor.WHITE + warning);
+                        }
+                    } else {
+                        sender.sendMessage(ChatColor.GREEN + "Class settings reloaded.");
+                    }
+                }));
+    }
+    
+    /**
+     * Handle the quality command. Shows the cosmetic quality tier and its recent changes,
+     * or pins a tier when one is given.
+     *
+     * @param sender The command sender
+     * @param args The command arguments
+     */
+    private void handleQuality(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("guildwarsclasses.admin")) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+            return;
+        }
+        
+        QualityGovernor governor = plugin.getClassManager().getQualityGovernor();
+        
+        if (args.length > 0) {
+            if (args[0].equalsIgnoreCase("auto")) {
+                governor.setForcedTier(null);
+                sender.sendMessage(ChatColor.GREEN + "Cosmetic quality now follows the server tick time.");
+                return;
+            }
+            
+            try {
+                QualityGovernor.Tier tier = QualityGovernor.Tier.valueOf(args[0].toUpperCase(Locale.ROOT));
+                governor.setForcedTier(tier);
+                sender.sendMessage(ChatColor.GREEN + "Cosmetic quality pinned to " + tier.name().toLowerCase(Locale.ROOT) + ".");
+            } catch (IllegalArgumentException e) {
+                sender.sendMessage(ChatColor.RED + "Usage: /class quality [full|reduced|minimal|auto]");
+            }
+            return;
+        }
+        
+        QualityGovernor.Tier forced = governor.getForcedTier();
+        sender.sendMessage(ChatColor.GOLD + "=== Cosmetic Quality ===");
+        sender.sendMessage(ChatColor.YELLOW + "Tier: " + ChatColor.WHITE + governor.getTier().name().toLowerCase(Locale.ROOT)
+                + (forced != null ? " (pinned)" : " (automatic)"));
+        sender.sendMessage(ChatColor.YELLOW + "Tick Time: " + ChatColor.WHITE + String.format("%.1f ms", governor.getLastMspt()));
+        
+        List<QualityGovernor.Transition> transitions = governor.getTransitions();
+        if (transitions.isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + "No tier changes since the server started.");
+            return;
+        }
+        
+        sender.sendMessage(ChatColor.GOLD + "Recent Changes:");
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+        for (QualityGovernor.Transition transition : transitions) {
+            sender.sendMessage(ChatColor.YELLOW + "- " + ChatColor.WHITE + timeFormat.format(new Date(transition.time())) + " "
+                    + transition.from().name().toLowerCase(Locale.ROOT) + " -> " + transition.to().name().toLowerCase(Locale.ROOT)
+                    + String.format(" at %.1f ms", transition.mspt()) + ChatColor.GRAY + " (" + transition.reason() + ")");
+        }
+    }
+    
+    /**
+     * Handle the guildwars command. Shows the state of the GuildWars integration: the
+     * circuit breaker around its calls and the guild caches. Resumes paused calls when
+     * given {@code reset}.
+     *
+     * @param sender The command sender
+     * @param args The command arguments
+     */
+    private void handleGuildWars(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("guildwarsclasses.admin")) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to use this command.");
+            return;
+        }
+        
+        GuildIntegration guildIntegration = plugin.getGuildIntegration();
+        CircuitBreaker breaker = guildIntegration.getBreaker();
+        
+        if (args.length > 0) {
+            if (args[0].equalsIgnoreCase("reset")) {
+                breaker.reset();
+                sender.sendMessage(ChatColor.GREEN + "GuildWars calls resumed.");
+            } else {
+                sender.sendMessage(ChatColor.RED + "Usage: /class guildwars [reset]");
+            }
+            return;
+        }
+        
+        sender.sendMessage(ChatColor.GOLD + "=== GuildWars Integration ===");
+        String state = breaker.getState().name().toLowerCase(Locale.ROOT).replace('_', '-');
+        if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+            state += String.format(" (next try in %.0f s)", breaker.getMillisUntilProbe() / 1000.0);
+        }
+        sender.sendMessage(ChatColor.YELLOW + "Circuit Breaker: " + ChatColor.WHITE + state);
+        sender.sendMessage(ChatColor.YELLOW + "Failures: " + ChatColor.WHITE + breaker.getConsecutiveFailures() + " in a row, "
+                + breaker.getTotalFailures() + " total, opened " + breaker.getTimesOpened() + " times");
+        sender.sendMessage(ChatColor.YELLOW + "Calls Skipped: " + ChatColor.WHITE + breaker.getRejectedCalls());
+        if (breaker.getLastFailure() != null) {
+            sender.sendMessage(ChatColor.YELLOW + "Last Error: " + ChatColor.WHITE + breaker.getLastFailure());
+        }
+        
+        GuildMembershipCache memberships = guildIntegration.getMembershipCache();
+        sender.sendMessage(ChatColor.YELLOW + "Memberships: " + ChatColor.WHITE + memberships.size() + " cached, "
+                + memberships.getHits() + " hits, " + memberships.getMisses() + " misses, " + memberships.getInvalidations() + " invalidated, "
+                + memberships.getStaleReads() + " served stale");
+        GuildRelationMatrix relations = guildIntegration.getRelationMatrix();
+        sender.sendMessage(ChatColor.YELLOW + "Relations: " + ChatColor.WHITE + relations.getGuildCount() + " guilds, "
+                + relations.getRowsRebuilt() + " rows rebuilt in " + relations.getRefreshCount() + " refreshes");
+    }
+    
     /**
      * Show a player's current class.
      *
-     * @param player The player
+     * @param session The player's session
      */
-    private void showPlayerClass(Player player) {
-        PlayerClass playerClass = plugin.getClassManager().getPlayerClass(player.getUniqueId());
+    private void showPlayerClass(PlayerSession session) {
+        Player player = session.getPlayer();
+        PlayerClass playerClass = session.getPlayerClass();
         
         player.sendMessage(ChatColor.GOLD + "=== Your Class ===");
         
@@ -95,6 +316,9 @@ public class ClassCommand implements CommandExecutor {
             player.sendMessage(ChatColor.YELLOW + "Description: " + ChatColor.WHITE + playerClass.getDescription());
             player.sendMessage(ChatColor.YELLOW + "Use " + ChatColor.WHITE + "/class ability1" + ChatColor.YELLOW + " to use your primary ability.");
             player.sendMessage(ChatColor.YELLOW + "Use " + ChatColor.WHITE + "/class ability2" + ChatColor.YELLOW + " to use your secondary ability.");
+            player.sendMessage(ChatColor.YELLOW + "Abilities Used: " + ChatColor.WHITE
+                    + session.getAbilityUses(PlayerClass.PRIMARY_ABILITY) + " primary, "
+                    + session.getAbilityUses(PlayerClass.SECONDARY_ABILITY) + " secondary (this session)");
         }
     }
     
@@ -109,6 +333,9 @@ public class ClassCommand implements CommandExecutor {
         player.sendMessage(ChatColor.GOLD + "=== Available Classes ===");
         
         for (PlayerClass playerClass : availableClasses) {
+            if (!playerClass.isEnabled()) {
+                continue;
+            }
             player.sendMessage(ChatColor.GREEN + playerClass.getName() + ChatColor.YELLOW + " - " + ChatColor.WHITE + playerClass.getDescription());
         }
         
@@ -143,13 +370,14 @@ public class ClassCommand implements CommandExecutor {
     /**
      * Handle the info command.
      *
-     * @param player The player
+     * @param session The player's session
      * @param args The command arguments
      */
-    private void handleInfo(Player player, String[] args) {
+    private void handleInfo(PlayerSession session, String[] args) {
+        Player player = session.getPlayer();
         if (args.length == 0) {
             // Show info for player's current class
-            PlayerClass playerClass = plugin.getClassManager().getPlayerClass(player.getUniqueId());
+            PlayerClass playerClass = session.getPlayerClass();
             
             if (playerClass == null) {
                 player.sendMessage(ChatColor.RED + "You don't have a class selected.");
@@ -184,14 +412,14 @@ public class ClassCommand implements CommandExecutor {
         player.sendMessage(ChatColor.YELLOW + "Description: " + ChatColor.WHITE + playerClass.getDescription());
         
         // Show class-specific information
-        if (playerClass.getTypeName().equals("orc")) {
-            player.sendMessage(ChatColor.YELLOW + "Primary Ability: " + ChatColor.WHITE + "Orc Rage - Gain increased strength and resistance for a short time.");
-            player.sendMessage(ChatColor.YELLOW + "Secondary Ability: " + ChatColor.WHITE + "Ground Slam - Knock back nearby enemies and apply weakness.");
-            player.sendMessage(ChatColor.YELLOW + "Passive Effects: " + ChatColor.WHITE + "Increased strength, but slower movement speed.");
-        } else if (playerClass.getTypeName().equals("healer")) {
-            player.sendMessage(ChatColor.YELLOW + "Primary Ability: " + ChatColor.WHITE + "Healing Beam - Shoot a beam that heals allies in its path.");
-            player.sendMessage(ChatColor.YELLOW + "Secondary Ability: " + ChatColor.WHITE + "Healing Aura - Heal all nearby allies and grant them absorption.");
-            player.sendMessage(ChatColor.YELLOW + "Passive Effects: " + ChatColor.WHITE + "Increased health and slow regeneration.");
+        if (playerClass.getPrimaryAbilityDescription() != null) {
+            player.sendMessage(ChatColor.YELLOW + "Primary Ability: " + ChatColor.WHITE + playerClass.getPrimaryAbilityDescription());
+        }
+        if (playerClass.getSecondaryAbilityDescription() != null) {
+            player.sendMessage(ChatColor.YELLOW + "Secondary Ability: " + ChatColor.WHITE + playerClass.getSecondaryAbilityDescription());
+        }
+        if (playerClass.getPassiveDescription() != null) {
+            player.sendMessage(ChatColor.YELLOW + "Passive Effects: " + ChatColor.WHITE + playerClass.getPassiveDescription());
         }
     }
     
@@ -212,26 +440,20 @@ public class ClassCommand implements CommandExecutor {
     /**
      * Handle the primary ability command.
      *
-     * @param player The player
+     * @param session The player's session
      */
-    private void handlePrimaryAbility(Player player) {
-        if (plugin.getClassManager().performPrimaryAbility(player)) {
-            // Success message is handled by the ability itself
-        } else {
-            // Failure message is handled by the ability or class manager
-        }
+    private void handlePrimaryAbility(PlayerSession session) {
+        // Success and failure messages are sent by the ability or class manager when the cast runs
+        plugin.getClassManager().queueAbility(session, PlayerClass.PRIMARY_ABILITY);
     }
     
     /**
      * Handle the secondary ability command.
      *
-     * @param player The player
+     * @param session The player's session
      */
-    private void handleSecondaryAbility(Player player) {
-        if (plugin.getClassManager().performSecondaryAbility(player)) {
-            // Success message is handled by the ability itself
-        } else {
-            // Failure message is handled by the ability or class manager
-        }
+    private void handleSecondaryAbility(PlayerSession session) {
+        // Success and failure messages are sent by the ability or class manager when the cast runs
+        plugin.getClassManager().queueAbility(session, PlayerClass.SECONDARY_ABILITY);
     }
 }
@@ -0,0 +1,455 @@
+package com.guildwars.classes.config;
+
+import com.guildwars.classes.model.PlayerClass;
+import com.guildwars.model.Relation;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Tag;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.inventory.EquipmentSlot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, validated snapshot of the class and guild bonus settings in config.yml.
+ * <p>
+ * The snapshot is parsed once, when the plugin enables and on {@code /class reload}.
+ * Abilities read it through final fields instead of looking up config paths, and should
+ * take the snapshot once at the start of a cast so a reload never changes values halfway
+ * through one. Values out of range are replaced by their defaults and reported in
+ * {@link #warnings()}.
+ *
+ * @param orc The Orc class settings
+ * @param healer The Healer class settings
+ * @param guildBonuses The guild integration settings
+ * @param targeting The guild relation targeting settings
+ * @param breaker The settings for pausing GuildWars calls after failures
+ * @param bindings The item clicks that trigger abilities, by class ID
+ * @param particles The particle effect settings
+ * @param quality The cosmetic quality governor settings
+ * @param execution The ability executor settings
+ * @param joins The join queue settings
+ * @param abilityReadyNotifications Whether players are told on the action bar when an ability is ready
+ * @param warnings Problems found while parsing
+ */
+public record ClassConfig(Orc orc, Healer healer, GuildBonuses guildBonuses, Targeting targeting, Breaker breaker, Map<String, List<Binding>> bindings, Particles particles, Quality quality, Execution execution, Joins joins, boolean abilityReadyNotifications, List<String> warnings) {
+
+    private static final int MAX_LEVEL = 255;
+    private static final int MAX_SECONDS = 86400;
+    private static final int MAX_RADIUS = 64;
+    private static final int MAX_BEAM_LENGTH = 128;
+    private static final int MAX_HEALING = 1024;
+    private static final int MAX_VIEW_DISTANCE = 256;
+    private static final int MAX_MSPT = 1000;
+
+    /**
+     * Settings for the Orc class.
+     *
+     * @param enabled Whether players can select the class
+     * @param strengthLevel Passive strength amplifier
+     * @param slownessLevel Passive slowness amplifier
+     * @param rageCooldownSeconds Orc Rage cooldown
+     * @param rageDurationSeconds Orc Rage duration
+     * @param rageStrengthLevel Strength amplifier during Orc Rage
+     * @param rageResistanceLevel Resistance amplifier during Orc Rage
+     * @param slamCooldownSeconds Ground Slam cooldown
+     * @param slamRadius Ground Slam radius in blocks
+     * @param slamKnockbackPower Ground Slam knockback multiplier
+     * @param slamWeaknessSeconds Weakness duration applied by Ground Slam
+     */
+    public record Orc(
+            boolean enabled,
+            int strengthLevel,
+            int slownessLevel,
+            int rageCooldownSeconds,
+            int rageDurationSeconds,
+            int rageStrengthLevel,
+            int rageResistanceLevel,
+            int slamCooldownSeconds,
+            double slamRadius,
+            double slamKnockbackPower,
+            int slamWeaknessSeconds) {
+    }
+
+    /**
+     * Settings for the Healer class.
+     *
+     * @param enabled Whether players can select the class
+     * @param healthBoostLevel Passive health boost amplifier
+     * @param regenerationLevel Passive regeneration amplifier
+     * @param beamCooldownSeconds Healing Beam cooldown
+     * @param beamHealing Health restored by Healing Beam
+     * @param beamLength Healing Beam length in blocks
+     * @param beamStopsAtBlocks Whether Healing Beam ends at the first solid block
+     * @param beamRegenerationSeconds Regeneration duration applied by Healing Beam
+     * @param beamRegenerationLevel Regeneration amplifier applied by Healing Beam
+     * @param auraCooldownSeconds Healing Aura cooldown
+     * @param auraRadius Healing Aura radius in blocks
+     * @param auraHealing Health restored by Healing Aura
+     * @param auraRegenerationSeconds Regeneration duration applied by Healing Aura
+     * @param auraRegenerationLevel Regeneration amplifier applied by Healing Aura
+     * @param auraAbsorptionSeconds Absorption duration applied by Healing Aura
+     * @param auraAbsorptionLevel Absorption amplifier applied by Healing Aura
+     */
+    public record Healer(
+            boolean enabled,
+            int healthBoostLevel,
+            int regenerationLevel,
+            int beamCooldownSeconds,
+            double beamHealing,
+            double beamLength,
+            boolean beamStopsAtBlocks,
+            int beamRegenerationSeconds,
+            int beamRegenerationLevel,
+            int auraCooldownSeconds,
+            double auraRadius,
+            double auraHealing,
+            int auraRegenerationSeconds,
+            int auraRegenerationLevel,
+            int auraAbsorptionSeconds,
+            int auraAbsorptionLevel) {
+    }
+
+    /**
+     * Guild integration settings.
+     *
+     * @param enabled Whether guild membership is checked at all
+     * @param bonusesEnabled Whether guild members get class bonuses
+     * @param orcStrengthBonus Extra strength amplifier for Orcs in a guild
+     * @param healerHealthBonus Extra health boost amplifier for Healers in a guild
+     * @param healerHealingBonus Extra healing for Healers in a guild
+     * @param membershipCacheSeconds How long a player's guild is remembered before asking GuildWars again
+     */
+    public record GuildBonuses(
+            boolean enabled,
+            boolean bonusesEnabled,
+            int orcStrengthBonus,
+            int healerHealthBonus,
+            int healerHealingBonus,
+            int membershipCacheSeconds) {
+    }
+
+    /**
+     * Settings for which players abilities affect, by the relation between the caster's
+     * guild and the target's. Guildmates count as {@link Relation#ALLY} and players outside
+     * a guild as {@link Relation#NEUTRAL}.
+     *
+     * @param enabled Whether targets are filtered by relation at all
+     * @param relationRefreshSeconds How often guild relations are read from GuildWars
+     * @param healing The relations Healing Beam and Healing Aura heal
+     * @param groundSlam The relations Ground Slam hits
+     */
+    public record Targeting(
+            boolean enabled,
+            int relationRefreshSeconds,
+            Set<Relation> healing,
+            Set<Relation> groundSlam) {
+
+        /**
+         * Check whether healing abilities affect a target.
+         *
+         * @param relation The relation between the caster and the target
+         * @return True if the target is healed
+         */
+        public boolean heals(Relation relation) {
+            return !enabled || healing.contains(relation);
+        }
+
+        /**
+         * Check whether Ground Slam affects a target.
+         *
+         * @param relation The relation between the caster and the target
+         * @return True if the target is hit
+         */
+        public boolean slams(Relation relation) {
+            return !enabled || groundSlam.contains(relation);
+        }
+    }
+
+    /**
+     * Settings for pausing GuildWars calls when it keeps failing.
+     *
+     * @param failureThreshold How many failures in a row pause calls
+     * @param openSeconds How long calls stay paused before one is tried again
+     * @param logIntervalSeconds The shortest time between two failure reports in the log
+     */
+    public record Breaker(
+            int failureThreshold,
+            int openSeconds,
+            int logIntervalSeconds) {
+    }
+
+    /**
+     * An item click that triggers an ability.
+     *
+     * @param ability The ability slot triggered
+     * @param items The items that trigger it
+     * @param leftClick True for a left click, false for a right click
+     * @param sneaking Whether the player must be sneaking, or null for either
+     * @param hand The hand the item must be in, or null for either
+     * @param cancel Whether the click is cancelled so the item's normal use does not happen
+     */
+    public record Binding(
+            int ability,
+            Set<Material> items,
+            boolean leftClick,
+            Boolean sneaking,
+            EquipmentSlot hand,
+            boolean cancel) {
+    }
+
+    /**
+     * Particle effect settings.
+     *
+     * @param viewDistance How far from an effect players can see it, in blocks
+     * @param fullDetailDistance How far from an effect players see every point of it, in blocks
+     */
+    public record Particles(
+            int viewDistance,
+            int fullDetailDistance) {
+    }
+
+    /**
+     * Settings for scaling cosmetics down under load.
+     *
+     * @param enabled Whether cosmetics are scaled by tick time at all
+     * @param reducedMspt Average tick time at which cosmetics are reduced
+     * @param minimalMspt Average tick time at which cosmetics are cut to a minimum
+     * @param recoveryMargin How far below a threshold tick time must drop before quality goes back up
+     * @param recoverySamples How many samples in a row tick time must stay below it
+     */
+    public record Quality(
+            boolean enabled,
+            double reducedMspt,
+            double minimalMspt,
+            double recoveryMargin,
+            int recoverySamples) {
+    }
+
+    /**
+     * Settings for running ability casts.
+     *
+     * @param tickBudgetMillis How long casts and multi-stage effects may run each tick
+     */
+    public record Execution(
+            double tickBudgetMillis) {
+    }
+
+    /**
+     * Settings for handling joining players.
+     *
+     * @param tickBudgetMillis How long applying class effects to joining players may take each tick
+     * @param maxPerTick The most joining players handled in one tick
+     */
+    public record Joins(
+            double tickBudgetMillis,
+            int maxPerTick) {
+    }
+
+    /**
+     * Parse and validate a snapshot from a configuration. Must be called on the main
+     * thread, or the global region on Folia, as item tags are looked up in the registry.
+     *
+     * @param config The root of config.yml
+     * @return The snapshot
+     */
+    public static ClassConfig parse(ConfigurationSection config) {
+        Parser parser = new Parser(config);
+
+        Orc orc = new Orc(
+                config.getBoolean("classes.orc.enabled", true),
+                parser.level("classes.orc.passive.strength-level", 0),
+                parser.level("classes.orc.passive.slowness-level", 0),
+                parser.seconds("classes.orc.primary-ability.cooldown", 60),
+                parser.seconds("classes.orc.primary-ability.duration", 15),
+                parser.level("classes.orc.primary-ability.strength-level", 1),
+                parser.level("classes.orc.primary-ability.resistance-level", 0),
+                parser.seconds("classes.orc.secondary-ability.cooldown", 180),
+                parser.decimal("classes.orc.secondary-ability.radius", 5, 0, MAX_RADIUS),
+                parser.decimal("classes.orc.secondary-ability.knockback-power", 1.5, 0, 10),
+                parser.seconds("classes.orc.secondary-ability.weakness-duration", 10));
+
+        Healer healer = new Healer(
+                config.getBoolean("classes.healer.enabled", true),
+                parser.level("classes.healer.passive.health-boost-level", 1),
+                parser.level("classes.healer.passive.regeneration-level", 0),
+                parser.seconds("classes.healer.primary-ability.cooldown", 30),
+                parser.decimal("classes.healer.primary-ability.healing-amount", 12, 0, MAX_HEALING),
+                parser.decimal("classes.healer.primary-ability.beam-length", 40, 1, MAX_BEAM_LENGTH),
+                config.getBoolean("classes.healer.primary-ability.stop-at-blocks", false),
+                parser.seconds("classes.healer.primary-ability.regeneration-duration", 10),
+                parser.level("classes.healer.primary-ability.regeneration-level", 1),
+                parser.seconds("classes.healer.secondary-ability.cooldown", 120),
+                parser.decimal("classes.healer.secondary-ability.radius", 10, 0, MAX_RADIUS),
+                parser.decimal("classes.healer.secondary-ability.healing-amount", 8, 0, MAX_HEALING),
+                parser.seconds("classes.healer.secondary-ability.regeneration-duration", 15),
+                parser.level("classes.healer.secondary-ability.regeneration-level", 1),
+                parser.seconds("classes.healer.secondary-ability.absorption-duration", 30),
+                parser.level("classes.healer.secondary-ability.absorption-level", 1));
+
+        GuildBonuses guildBonuses = new GuildBonuses(
+                config.getBoolean("guild-integration.enabled", true),
+                config.getBoolean("guild-integration.guild-bonuses.enabled", true),
+                parser.level("guild-integration.guild-bonuses.orc.strength-bonus", 1),
+                parser.level("guild-integration.guild-bonuses.healer.health-bonus", 1),
+                parser.integer("guild-integration.guild-bonuses.healer.healing-bonus", 2, 0, MAX_HEALING),
+                parser.integer("guild-integration.membership-cache", 60, 1, MAX_SECONDS));
+
+        Targeting targeting = new Targeting(
+                config.getBoolean("guild-integration.targeting.enabled", true),
+                parser.integer("guild-integration.targeting.relation-refresh", 5, 1, 3600),
+                parser.relations("guild-integration.targeting.healing", EnumSet.of(Relation.ALLY, Relation.NEUTRAL)),
+                parser.relations("guild-integration.targeting.ground-slam", EnumSet.of(Relation.NEUTRAL, Relation.ENEMY, Relation.WAR)));
+
+        Breaker breaker = new Breaker(
+                parser.integer("guild-integration.circuit-breaker.failure-threshold", 5, 1, 1000),
+                parser.integer("guild-integration.circuit-breaker.open-time", 30, 1, MAX_SECONDS),
+                parser.integer("guild-integration.circuit-breaker.log-interval", 60, 0, MAX_SECONDS));
+
+        Map<String, List<Binding>> bindings = new HashMap<>();
+        bindings.put("orc", parser.bindings("classes.orc.bindings", List.of(
+                new Binding(PlayerClass.PRIMARY_ABILITY, parser.items("#axes"), false, null, EquipmentSlot.HAND, false),
+                new Binding(PlayerClass.SECONDARY_ABILITY, parser.items("#axes"), true, true, EquipmentSlot.HAND, false))));
+        bindings.put("healer", parser.bindings("classes.healer.bindings", List.of(
+                new Binding(PlayerClass.PRIMARY_ABILITY, Set.of(Material.STICK), false, null, EquipmentSlot.HAND, true),
+                new Binding(PlayerClass.SECONDARY_ABILITY, Set.of(Material.STICK), true, true, EquipmentSlot.HAND, true))));
+
+        Particles particles = new Particles(
+                parser.integer("particles.view-distance", 48, 1, MAX_VIEW_DISTANCE),
+                parser.integer("particles.full-detail-distance", 16, 0, MAX_VIEW_DISTANCE));
+
+        Quality quality = new Quality(
+                config.getBoolean("cosmetic-quality.enabled", true),
+                parser.decimal("cosmetic-quality.reduced-mspt", 40, 1, MAX_MSPT),
+                parser.decimal("cosmetic-quality.minimal-mspt", 48, 1, MAX_MSPT),
+                parser.decimal("cosmetic-quality.recovery-margin", 5, 0, MAX_MSPT),
+                parser.integer("cosmetic-quality.recovery-samples", 5, 1, 600));
+
+        Execution execution = new Execution(
+                parser.decimal("ability-execution.tick-budget-ms", 2, 0, 50));
+
+        Joins joins = new Joins(
+                parser.decimal("join-queue.tick-budget-ms", 1, 0, 50),
+                parser.integer("join-queue.max-per-tick", 20, 1, 1000));
+
+        return new ClassConfig(orc, healer, guildBonuses, targeting, breaker, Collections.unmodifiableMap(bindings), particles, quality, execution, joins,
+                config.getBoolean("settings.ability-ready-notifications", true),
+                Collections.unmodifiableList(parser.warnings));
+    }
+
+    /**
+     * Reads values and collects warnings for the ones that are out of range.
+     */
+    private static final class Parser {
+
+        private final ConfigurationSection config;
+        private final List<String> warnings = new ArrayList<>();
+
+        private Parser(ConfigurationSection config) {
+            this.config = config;
+        }
+
+        private int level(String path, int defaultValue) {
+            return integer(path, defaultValue, 0, MAX_LEVEL);
+        }
+
+        private int seconds(String path, int defaultValue) {
+            return integer(path, defaultValue, 0, MAX_SECONDS);
+        }
+
+        private int integer(String path, int defaultValue, int min, int max) {
+            int value = config.getInt(path, defaultValue);
+            if (value < min || value > max) {
+                warnings.add(path + " must be between " + min + " and " + max + ", using " + defaultValue);
+                return defaultValue;
+            }
+            return value;
+        }
+
+        private Set<Relation> relations(String path, Set<Relation> defaultValue) {
+            if (!config.isList(path)) {
+                return Collections.unmodifiableSet(defaultValue);
+            }
+
+            Set<Relation> relations = EnumSet.noneOf(Relation.class);
+            for (String name : config.getStringList(path)) {
+                try {
+                    relations.add(Relation.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    warnings.add(path + " has unknown relation " + name + ", ignoring it");
+                }
+            }
+            return Collections.unmodifiableSet(relations);
+        }
+
+        private List<Binding> bindings(String path, List<Binding> defaultValue) {
+            ConfigurationSection section = config.getConfigurationSection(path);
+            if (section == null) {
+                return defaultValue;
+            }
+
+            List<Binding> bindings = new ArrayList<>();
+            for (String name : section.getKeys(false)) {
+                String bindingPath = path + "." + name;
+                ConfigurationSection binding = section.getConfigurationSection(name);
+                if (binding == null) {
+                    warnings.add(bindingPath + " must be a section, ignoring it");
+                    continue;
+                }
+
+                String ability = binding.getString("ability", "primary").toLowerCase(Locale.ROOT);
+                String click = binding.getString("click", "right").toLowerCase(Locale.ROOT);
+                String sneaking = binding.getString("sneaking", "any").toLowerCase(Locale.ROOT);
+                String hand = binding.getString("hand", "main").toLowerCase(Locale.ROOT);
+                Set<Material> items = items(binding.getString("item", ""));
+                if (!ability.equals("primary") && !ability.equals("secondary")) {
+                    warnings.add(bindingPath + ".ability must be primary or secondary, ignoring the binding");
+                } else if (!click.equals("right") && !click.equals("left")) {
+                    warnings.add(bindingPath + ".click must be right or left, ignoring the binding");
+                } else if (!sneaking.equals("any") && !sneaking.equals("true") && !sneaking.equals("false")) {
+                    warnings.add(bindingPath + ".sneaking must be any, true or false, ignoring the binding");
+                } else if (!hand.equals("main") && !hand.equals("off") && !hand.equals("any")) {
+                    warnings.add(bindingPath + ".hand must be main, off or any, ignoring the binding");
+                } else if (items.isEmpty()) {
+                    warnings.add(bindingPath + ".item must be an item or an item tag such as #axes, ignoring the binding");
+                } else {
+                    bindings.add(new Binding(
+                            ability.equals("primary") ? PlayerClass.PRIMARY_ABILITY : PlayerClass.SECONDARY_ABILITY,
+                            items,
+                            click.equals("left"),
+                            sneaking.equals("any") ? null : sneaking.equals("true"),
+                            hand.equals("any") ? null : hand.equals("main") ? EquipmentSlot.HAND : EquipmentSlot.OFF_HAND,
+                            binding.getBoolean("cancel", true)));
+                }
+            }
+            return Collections.unmodifiableList(bindings);
+        }
+
+        private Set<Material> items(String name) {
+            if (name.startsWith("#")) {
+                Tag<Material> tag = Bukkit.getTag(Tag.REGISTRY_ITEMS, NamespacedKey.fromString(name.substring(1).toLowerCase(Locale.ROOT)), Material.class);
+                return tag != null ? Collections.unmodifiableSet(EnumSet.copyOf(tag.getValues())) : Set.of();
+            }
+
+            Material material = Material.matchMaterial(name);
+            return material != null && material.isItem() ? Set.of(material) : Set.of();
+        }
+
+        private double decimal(String path, double defaultValue, double min, double max) {
+            double value = config.getDouble(path, defaultValue);
+            if (!(value >= min && value <= max)) {
+                warnings.add(path + " must be between " + min + " and " + max + ", using " + defaultValue);
+                return defaultValue;
+            }
+            return value;
+        }
+    }
+}
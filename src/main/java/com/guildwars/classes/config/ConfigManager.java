@@ -0,0 +1,85 @@
+package com.guildwars.classes.config;
+
+import com.guildwars.classes.GuildWarsClasses;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds the current {@link ClassConfig} snapshot and rebuilds it on reload.
+ * <p>
+ * The snapshot is swapped with a single volatile write, so readers on any thread see
+ * either the old or the new settings, never a mix. Settings outside the snapshot
+ * (storage, save interval, cache sizes) still need a restart to change.
+ */
+public class ConfigManager {
+
+    private final GuildWarsClasses plugin;
+    private volatile ClassConfig config;
+
+    /**
+     * Creates a new config manager and parses the loaded config.yml.
+     *
+     * @param plugin The GuildWarsClasses plugin instance
+     */
+    public ConfigManager(GuildWarsClasses plugin) {
+        this.plugin = plugin;
+        this.config = parse(plugin.getConfig());
+    }
+
+    /**
+     * Get the current settings snapshot.
+     * Safe to call from any thread.
+     *
+     * @return The current snapshot
+     */
+    public ClassConfig get() {
+        return config;
+    }
+
+    /**
+     * Re-read config.yml from disk and swap in the new snapshot. The file is read on the
+     * storage thread, then parsed on the main thread, or the global region on Folia, as
+     * item tags can only be looked up there. Nothing waits on the reload.
+     *
+     * @return A future completed with the new snapshot
+     */
+    public CompletableFuture<ClassConfig> reloadAsync() {
+        File file = new File(plugin.getDataFolder(), "config.yml");
+        CompletableFuture<ClassConfig> reload = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> YamlConfiguration.loadConfiguration(file), plugin.getClassStorage().getExecutor())
+                .whenComplete((source, error) -> {
+                    if (error != null) {
+                        reload.completeExceptionally(error);
+                        return;
+                    }
+                    
+                    plugin.getTaskScheduler().runGlobal(() -> {
+                        try {
+                            ClassConfig reloaded = parse(source);
+                            config = reloaded;
+                            reload.complete(reloaded);
+                        } catch (RuntimeException e) {
+                            reload.completeExceptionally(e);
+                        }
+                    });
+                });
+        return reload;
+    }
+
+    /**
+     * Parse a snapshot and log any values that were rejected.
+     *
+     * @param source The configuration to parse
+     * @return The snapshot
+     */
+    private ClassConfig parse(ConfigurationSection source) {
+        ClassConfig parsed = ClassConfig.parse(source);
+        for (String warning : parsed.warnings()) {
+            plugin.getLogger().warning("Invalid config value: " + warning);
+        }
+        return parsed;
+    }
+}
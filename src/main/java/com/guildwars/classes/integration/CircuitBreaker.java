@@ -0,0 +1,275 @@
+package com.guildwars.classes.integration;
+
+import com.guildwars.classes.config.ClassConfig;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Stops calling GuildWars for a while after it keeps failing.
+ * <p>
+ * While GuildWars answers, calls pass straight through ({@link State#CLOSED}). After a
+ * number of failures in a row the breaker opens ({@link State#OPEN}) and calls fail at
+ * once with {@link OpenException} without reaching GuildWars, so callers fall back to
+ * the last guilds and relations they know. Once the open time has passed, the next call
+ * is let through as a probe ({@link State#HALF_OPEN}): if it succeeds the breaker closes,
+ * and if it fails the breaker opens again. Calls that were already running when the
+ * breaker opened can't close it or open it again; only the probe decides. Failures are
+ * logged at most once per log interval, with a count of those left out. Safe to use
+ * from any thread.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Whether calls reach GuildWars.
+     */
+    public enum State {
+        /**
+         * Calls pass through.
+         */
+        CLOSED,
+
+        /**
+         * Calls fail at once.
+         */
+        OPEN,
+
+        /**
+         * One call is let through to see whether GuildWars has recovered.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Thrown instead of calling GuildWars while the breaker is open. Shared and without a
+     * stack trace, as it is thrown on every call in that state.
+     */
+    public static final class OpenException extends RuntimeException {
+
+        private static final OpenException INSTANCE = new OpenException();
+
+        private OpenException() {
+            super("GuildWars calls are paused after repeated failures", null, false, false);
+        }
+    }
+
+    private final String name;
+    private final Logger logger;
+    private final Supplier<ClassConfig.Breaker> settings;
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private volatile int consecutiveFailures;
+    private long totalFailures;
+    private long timesOpened;
+    private long lastLoggedAt;
+    private int unloggedFailures;
+    private volatile String lastFailure;
+
+    /**
+     * Creates a new circuit breaker.
+     *
+     * @param name What the breaker protects, used in log messages
+     * @param logger The logger to report failures to
+     * @param settings Supplies the current breaker settings
+     */
+    public CircuitBreaker(String name, Logger logger, Supplier<ClassConfig.Breaker> settings) {
+        this.name = name;
+        this.logger = logger;
+        this.settings = settings;
+    }
+
+    /**
+     * Run a call through the breaker.
+     *
+     * @param call The call to GuildWars
+     * @param <T> The type of the result
+     * @return The result of the call
+     * @throws OpenException If the breaker is open and the call was not made
+     * @throws RuntimeException If the call failed
+     */
+    public <T> T call(Supplier<T> call) {
+        boolean probe = false;
+        if (state != State.CLOSED) {
+            if (!isProbeDue() || !probing.compareAndSet(false, true)) {
+                rejectedCalls.increment();
+                throw OpenException.INSTANCE;
+            }
+            probe = true;
+            synchronized (this) {
+                // An admin may have closed the breaker since it was checked
+                if (state != State.CLOSED) {
+                    state = State.HALF_OPEN;
+                }
+            }
+        }
+
+        try {
+            T result = call.get();
+            recordSuccess(probe);
+            return result;
+        } catch (RuntimeException e) {
+            recordFailure(e, probe);
+            throw e;
+        } finally {
+            if (probe) {
+                probing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Close the breaker by hand and forget the failures counted so far.
+     */
+    public synchronized void reset() {
+        if (state != State.CLOSED) {
+            logger.info(name + " calls resumed by an admin.");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Get whether calls reach GuildWars.
+     *
+     * @return The state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of failures in a row since the last success.
+     *
+     * @return The failure count
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Get the number of failed calls since the server started.
+     *
+     * @return The failure count
+     */
+    public synchronized long getTotalFailures() {
+        return totalFailures;
+    }
+
+    /**
+     * Get the number of times the breaker opened since the server started.
+     *
+     * @return The open count
+     */
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+
+    /**
+     * Get the number of calls turned away while the breaker was open.
+     *
+     * @return The rejected call count
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * Get the message of the last failure.
+     *
+     * @return The message, or null if no call has failed
+     */
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Get how long until the next probe is let through.
+     *
+     * @return The time in milliseconds, or 0 if the breaker is closed or a probe is due
+     */
+    public long getMillisUntilProbe() {
+        if (state == State.CLOSED) {
+            return 0;
+        }
+        return Math.max(0, openedAt + settings.get().openSeconds() * 1000L - System.currentTimeMillis());
+    }
+
+    /**
+     * Check whether the breaker has been open long enough to try a probe.
+     *
+     * @return True if a probe may be sent
+     */
+    private boolean isProbeDue() {
+        return System.currentTimeMillis() - openedAt >= settings.get().openSeconds() * 1000L;
+    }
+
+    /**
+     * Clear the failure count after a call succeeded, and close the breaker if the call
+     * was the probe.
+     *
+     * @param probe Whether the call was the probe of an open breaker
+     */
+    private void recordSuccess(boolean probe) {
+        // Skip the lock on the common path of a closed breaker with nothing to clear
+        if (state == State.CLOSED && consecutiveFailures == 0) {
+            return;
+        }
+
+        synchronized (this) {
+            if (state != State.CLOSED) {
+                // A call started before the breaker opened says nothing about recovery
+                if (!probe) {
+                    return;
+                }
+                logger.info(name + " is answering again; calls resumed.");
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * Count a failed call, opening the breaker if there have been too many in a row.
+     *
+     * @param e The failure
+     * @param probe Whether the call was the probe of an open breaker
+     */
+    private synchronized void recordFailure(RuntimeException e, boolean probe) {
+        ClassConfig.Breaker breakerSettings = settings.get();
+        long now = System.currentTimeMillis();
+        lastFailure = e.getClass().getSimpleName() + ": " + e.getMessage();
+        consecutiveFailures++;
+        totalFailures++;
+
+        if (state == State.CLOSED && consecutiveFailures >= breakerSettings.failureThreshold()) {
+            timesOpened++;
+            state = State.OPEN;
+            openedAt = now;
+            logger.warning(name + " failed " + consecutiveFailures + " times in a row; pausing calls for "
+                    + breakerSettings.openSeconds() + " seconds and using the last known guilds. Last error: " + lastFailure);
+            lastLoggedAt = now;
+            unloggedFailures = 0;
+            return;
+        }
+        if (probe && state == State.HALF_OPEN) {
+            // The probe failed; wait another open period before the next one
+            state = State.OPEN;
+            openedAt = now;
+        }
+
+        // Report the failure, or count it towards the next report
+        if (now - lastLoggedAt >= breakerSettings.logIntervalSeconds() * 1000L) {
+            String suppressed = unloggedFailures > 0 ? " (" + unloggedFailures + " more failures since the last report)" : "";
+            logger.warning(name + " call failed: " + lastFailure + suppressed);
+            lastLoggedAt = now;
+            unloggedFailures = 0;
+        } else {
+            unloggedFailures++;
+        }
+    }
+}
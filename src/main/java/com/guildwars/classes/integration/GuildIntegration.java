@@ -2,12 +2,14 @@ package com.guildwars.classes.integration;
 
 import com.guildwars.GuildWars;
 import com.guildwars.classes.GuildWarsClasses;
-import com.guildwars.classes.model.PlayerClass;
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.config.ConfigManager;
+import com.guildwars.classes.managers.PlayerSession;
 import com.guildwars.model.Guild;
-import org.bukkit.attribute.Attribute;
+import com.guildwars.model.Relation;
 import org.bukkit.entity.Player;
-import org.bukkit.potion.PotionEffect;
-import org.bukkit.potion.PotionEffectType;
+
+import java.util.UUID;
 
 
 
@@ -19,8 +21,10 @@ public class GuildIntegration {
 
     private final GuildWarsClasses plugin;
     private final GuildWars guildWarsPlugin;
-    private final boolean enabled;
-    private final boolean guildBonusesEnabled;
+    private final ConfigManager configManager;
+    private final GuildRelationMatrix relationMatrix = new GuildRelationMatrix();
+    private final GuildMembershipCache membershipCache;
+    private final CircuitBreaker breaker;
     
     /**
      * Creates a new guild integration handler.
@@ -30,8 +34,20 @@ public class GuildIntegration {
     public GuildIntegration(GuildWarsClasses plugin) {
         this.plugin = plugin;
         this.guildWarsPlugin = plugin.getGuildWarsPlugin();
-        this.enabled = plugin.getConfig().getBoolean("guild-integration.enabled", true);
-        this.guildBonusesEnabled = plugin.getConfig().getBoolean("guild-integration.guild-bonuses.enabled", true);
+        this.configManager = plugin.getConfigManager();
+        this.breaker = new CircuitBreaker("GuildWars", plugin.getLogger(), () -> configManager.get().breaker());
+        this.membershipCache = new GuildMembershipCache(
+                playerId -> breaker.call(() -> guildWarsPlugin.getGuildService().getGuildByPlayer(playerId)),
+                () -> settings().membershipCacheSeconds() * 1000L);
+    }
+    
+    /**
+     * Get the current guild integration settings.
+     *
+     * @return The guild bonus settings
+     */
+    private ClassConfig.GuildBonuses settings() {
+        return configManager.get().guildBonuses();
     }
     
     /**
@@ -41,17 +57,51 @@ public class GuildIntegration {
      * @return True if the player is in a guild, false otherwise
      */
     public boolean isPlayerInGuild(Player player) {
-        if (!enabled || guildWarsPlugin == null) {
-            return false;
+        GuildMembershipCache.Membership membership = getMembership(player.getUniqueId());
+        return membership != null && membership.isInGuild();
+    }
+    
+    /**
+     * Check if an online player is in a guild, reusing the guild cached on their session
+     * instead of asking GuildWars on every ability use.
+     *
+     * @param session The player's session
+     * @return True if the player is in a guild, false otherwise
+     */
+    public boolean isPlayerInGuild(PlayerSession session) {
+        return getGuildId(session) != null;
+    }
+    
+    /**
+     * Get the ID of an online player's guild, reusing the guild cached on their session
+     * instead of asking GuildWars every time.
+     *
+     * @param session The player's session
+     * @return The guild ID, or null if the player is not in a guild
+     */
+    public String getGuildId(PlayerSession session) {
+        GuildMembershipCache.Membership membership = getMembership(session);
+        return membership != null ? membership.getGuildId() : null;
+    }
+    
+    /**
+     * Get the relation between two online players' guilds. Guildmates are allies, and
+     * players outside a guild are neutral to everyone.
+     *
+     * @param session1 The first player's session
+     * @param session2 The second player's session
+     * @return The relation
+     */
+    public Relation getRelation(PlayerSession session1, PlayerSession session2) {
+        GuildMembershipCache.Membership membership1 = getMembership(session1);
+        GuildMembershipCache.Membership membership2 = getMembership(session2);
+        if (membership1 == null || membership2 == null || !membership1.isInGuild() || !membership2.isInGuild()) {
+            return Relation.NEUTRAL;
         }
-        
-        try {
-            Guild guild = guildWarsPlugin.getGuildService().getGuildByPlayer(player.getUniqueId());
-            return guild != null;
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error checking if player is in guild: " + e.getMessage());
-            return false;
+        if (membership1.getGuildId().equals(membership2.getGuildId())) {
+            return Relation.ALLY;
         }
+        return relationMatrix.getRelation(membership1.getGuildOrdinal(relationMatrix), membership2.getGuildOrdinal(relationMatrix));
     }
     
     /**
@@ -61,16 +111,8 @@ public class GuildIntegration {
      * @return The player's guild, or null if they are not in a guild
      */
     public Guild getPlayerGuild(Player player) {
-        if (!enabled || guildWarsPlugin == null) {
-            return null;
-        }
-        
-        try {
-            return guildWarsPlugin.getGuildService().getGuildByPlayer(player.getUniqueId());
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error getting player guild: " + e.getMessage());
-            return null;
-        }
+        GuildMembershipCache.Membership membership = getMembership(player.getUniqueId());
+        return membership != null ? membership.getGuild() : null;
     }
     
     /**
@@ -81,82 +123,127 @@ public class GuildIntegration {
      * @return True if both players are in the same guild, false otherwise
      */
     public boolean arePlayersInSameGuild(Player player1, Player player2) {
-        if (!enabled || guildWarsPlugin == null) {
+        GuildMembershipCache.Membership membership1 = getMembership(player1.getUniqueId());
+        GuildMembershipCache.Membership membership2 = getMembership(player2.getUniqueId());
+        if (membership1 == null || membership2 == null || !membership1.isInGuild()) {
             return false;
         }
+        return membership1.getGuildId().equals(membership2.getGuildId());
+    }
+    
+    /**
+     * Load an online player's guild into the membership cache ahead of their first ability use.
+     *
+     * @param session The player's session
+     */
+    public void warmMembership(PlayerSession session) {
+        getMembership(session);
+    }
+    
+    /**
+     * Forget a player's guild, and that of everyone cached as a member of it, after they
+     * used a guild command that may have changed membership.
+     *
+     * @param playerId The UUID of the player
+     */
+    public void invalidateMembership(UUID playerId) {
+        membershipCache.invalidate(playerId);
+    }
+    
+    /**
+     * Drop a player's cached guild when they leave.
+     *
+     * @param playerId The UUID of the player
+     */
+    public void forgetMembership(UUID playerId) {
+        membershipCache.remove(playerId);
+    }
+    
+    /**
+     * Get the guild membership cache.
+     *
+     * @return The membership cache
+     */
+    public GuildMembershipCache getMembershipCache() {
+        return membershipCache;
+    }
+    
+    /**
+     * Get an online player's membership from the cache.
+     *
+     * @param session The player's session
+     * @return The membership, or null if guild integration is off or GuildWars failed with
+     *         no last known guild to fall back on
+     */
+    private GuildMembershipCache.Membership getMembership(PlayerSession session) {
+        if (!settings().enabled() || guildWarsPlugin == null) {
+            return null;
+        }
         
         try {
-            Guild guild1 = guildWarsPlugin.getGuildService().getGuildByPlayer(player1.getUniqueId());
-            Guild guild2 = guildWarsPlugin.getGuildService().getGuildByPlayer(player2.getUniqueId());
-            
-            if (guild1 == null || guild2 == null) {
-                return false;
-            }
-            
-            return guild1.getId().equals(guild2.getId());
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error checking if players are in same guild: " + e.getMessage());
-            return false;
+            return membershipCache.get(session);
+        } catch (RuntimeException e) {
+            // Already reported by the breaker; treat the player as guildless until GuildWars answers
+            return null;
         }
     }
     
     /**
-     * Apply guild bonuses to a player based on their class.
+     * Get a player's membership from the cache.
      *
-     * @param player The player
-     * @param playerClass The player's class
+     * @param playerId The UUID of the player
+     * @return The membership, or null if guild integration is off or GuildWars failed with
+     *         no last known guild to fall back on
      */
-    public void applyGuildBonuses(Player player, PlayerClass playerClass) {
-        if (!enabled || !guildBonusesEnabled || guildWarsPlugin == null) {
-            return;
+    private GuildMembershipCache.Membership getMembership(UUID playerId) {
+        if (!settings().enabled() || guildWarsPlugin == null) {
+            return null;
         }
         
-        if (!isPlayerInGuild(player)) {
+        try {
+            return membershipCache.get(playerId);
+        } catch (RuntimeException e) {
+            // Already reported by the breaker; treat the player as guildless until GuildWars answers
+            return null;
+        }
+    }
+    
+    /**
+     * Read every guild's relations from GuildWars into the relation table. If GuildWars
+     * fails, the table keeps the relations it last read.
+     * Called every few seconds on the main thread, or the global region on Folia.
+     */
+    public void refreshRelations() {
+        if (!settings().enabled() || guildWarsPlugin == null) {
             return;
         }
         
-        String classType = playerClass.getTypeName();
-        
-        switch (classType) {
-            case "orc":
-                applyOrcGuildBonuses(player);
-                break;
-            case "healer":
-                applyHealerGuildBonuses(player);
-                break;
-            default:
-                // No bonuses for unknown class types
-                break;
+        try {
+            breaker.call(() -> {
+                relationMatrix.refresh(guildWarsPlugin.getGuildService().getAllGuilds());
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Already reported by the breaker
         }
     }
     
     /**
-     * Apply guild bonuses for the Orc class.
+     * Get the circuit breaker around GuildWars calls.
      *
-     * @param player The player
+     * @return The circuit breaker
      */
-    private void applyOrcGuildBonuses(Player player) {
-        int strengthBonus = plugin.getConfig().getInt("guild-integration.guild-bonuses.orc.strength-bonus", 1);
-        
-        if (strengthBonus > 0) {
-            player.addPotionEffect(new PotionEffect(PotionEffectType.STRENGTH, Integer.MAX_VALUE, strengthBonus, true, false));
-            player.sendMessage("§6[Guild Bonus] §aYour guild membership grants you additional strength!");
-        }
+    public CircuitBreaker getBreaker() {
+        return breaker;
     }
     
     /**
-     * Apply guild bonuses for the Healer class.
+     * Get the guild relation table.
      *
-     * @param player The player
+     * @return The relation table
      */
-    private void applyHealerGuildBonuses(Player player) {
-        int healthBonus = plugin.getConfig().getInt("guild-integration.guild-bonuses.healer.health-bonus", 1);
-        
-        if (healthBonus > 0) {
-            player.addPotionEffect(new PotionEffect(PotionEffectType.HEALTH_BOOST, Integer.MAX_VALUE, healthBonus, true, false));
-            player.setHealth(Math.min(player.getHealth() + 4, player.getAttribute(Attribute.MAX_HEALTH).getValue()));
-            player.sendMessage("§6[Guild Bonus] §aYour guild membership grants you additional health!");
-        }
+    public GuildRelationMatrix getRelationMatrix() {
+        return relationMatrix;
     }
     
     /**
@@ -166,7 +253,7 @@ public class GuildIntegration {
      * @return The healing bonus amount
      */
     public int getHealerGuildHealingBonus(Player player) {
-        if (!enabled || !guildBonusesEnabled || guildWarsPlugin == null) {
+        if (!areGuildBonusesEnabled()) {
             return 0;
         }
         
@@ -174,7 +261,7 @@ public class GuildIntegration {
             return 0;
         }
         
-        return plugin.getConfig().getInt("guild-integration.guild-bonuses.healer.healing-bonus", 2);
+        return settings().healerHealingBonus();
     }
     
     /**
@@ -184,7 +271,7 @@ public class GuildIntegration {
      * @return The strength bonus level
      */
     public int getOrcGuildStrengthBonus(Player player) {
-        if (!enabled || !guildBonusesEnabled || guildWarsPlugin == null) {
+        if (!areGuildBonusesEnabled()) {
             return 0;
         }
         
@@ -192,7 +279,7 @@ public class GuildIntegration {
             return 0;
         }
         
-        return plugin.getConfig().getInt("guild-integration.guild-bonuses.orc.strength-bonus", 1);
+        return settings().orcStrengthBonus();
     }
     
     /**
@@ -201,7 +288,7 @@ public class GuildIntegration {
      * @return True if guild integration is enabled, false otherwise
      */
     public boolean isEnabled() {
-        return enabled && guildWarsPlugin != null;
+        return settings().enabled() && guildWarsPlugin != null;
     }
     
     /**
@@ -210,6 +297,7 @@ public class GuildIntegration {
      * @return True if guild bonuses are enabled, false otherwise
      */
     public boolean areGuildBonusesEnabled() {
-        return enabled && guildBonusesEnabled && guildWarsPlugin != null;
+        ClassConfig.GuildBonuses settings = settings();
+        return settings.enabled() && settings.bonusesEnabled() && guildWarsPlugin != null;
     }
 }
@@ -0,0 +1,264 @@
+package com.guildwars.classes.integration;
+
+import com.guildwars.classes.managers.PlayerSession;
+import com.guildwars.model.Guild;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers which guild each player is in, so abilities do not ask GuildWars on every cast.
+ * <p>
+ * Entries are loaded the first time a player is looked up, or when they join, and are
+ * dropped when they leave. GuildWars does not announce membership changes, so entries are
+ * invalidated when a player uses a guild command that may change membership, and expire
+ * after a configured time to catch changes made any other way, such as by an admin or
+ * another plugin. Online players also keep their entry on their session, so most lookups
+ * read a field instead of the map.
+ * <p>
+ * Expired and invalidated entries are kept until the player leaves, as the last known
+ * guild. If GuildWars fails to answer, that entry is used instead. Safe to use from any
+ * thread.
+ */
+public class GuildMembershipCache {
+
+    /**
+     * A player's guild as last loaded from GuildWars.
+     */
+    public static final class Membership {
+
+        private final String guildId;
+        private final Guild guild;
+        private final long expiresAt;
+        private volatile boolean invalidated;
+
+        private Membership(Guild guild, long expiresAt) {
+            this.guildId = guild != null ? guild.getId() : null;
+            this.guild = guild;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Get the ID of the player's guild.
+         *
+         * @return The guild ID, or null if the player is not in a guild
+         */
+        public String getGuildId() {
+            return guildId;
+        }
+
+        /**
+         * Get the player's guild.
+         *
+         * @return The guild as returned by GuildWars, or null if the player is not in a guild
+         */
+        public Guild getGuild() {
+            return guild;
+        }
+
+        /**
+         * Check whether the player is in a guild.
+         *
+         * @return True if the player is in a guild
+         */
+        public boolean isInGuild() {
+            return guildId != null;
+        }
+
+        /**
+         * Get the ordinal of the player's guild in the guild relation table. It is looked up
+         * on every call, as the ordinal of a deleted guild is given to the next new one.
+         *
+         * @param relationMatrix The guild relation table
+         * @return The ordinal, or -1 if the player is not in a guild or it is not in the table
+         */
+        public int getGuildOrdinal(GuildRelationMatrix relationMatrix) {
+            return guildId != null ? relationMatrix.getOrdinal(guildId) : -1;
+        }
+
+        /**
+         * Check whether the entry can still be used.
+         *
+         * @param now The current time in epoch milliseconds
+         * @return True if it has neither expired nor been invalidated
+         */
+        private boolean isCurrent(long now) {
+            return !invalidated && now < expiresAt;
+        }
+    }
+
+    private final Map<UUID, Membership> entries = new ConcurrentHashMap<>();
+    private final Function<UUID, Guild> loader;
+    private final LongSupplier ttlMillis;
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder staleReads = new LongAdder();
+
+    /**
+     * Creates a new membership cache.
+     *
+     * @param loader Looks up a player's guild in GuildWars, returning null if they are not in one
+     * @param ttlMillis Supplies how long an entry is used before it is loaded again
+     */
+    public GuildMembershipCache(Function<UUID, Guild> loader, LongSupplier ttlMillis) {
+        this.loader = loader;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Get an online player's guild, reading the entry kept on their session when it is
+     * still current.
+     *
+     * @param session The player's session
+     * @return The player's membership
+     */
+    public Membership get(PlayerSession session) {
+        Membership membership = session.getGuildMembership();
+        if (membership != null && membership.isCurrent(System.currentTimeMillis())) {
+            hits.increment();
+            return membership;
+        }
+
+        membership = get(session.getPlayerId());
+        session.setGuildMembership(membership);
+        return membership;
+    }
+
+    /**
+     * Get a player's guild, loading it from GuildWars if it is not cached. If loading
+     * fails, the player's last known guild is used.
+     *
+     * @param playerId The UUID of the player
+     * @return The player's membership
+     * @throws RuntimeException If loading failed and the player's guild was never known
+     */
+    public Membership get(UUID playerId) {
+        long now = System.currentTimeMillis();
+        Membership last = entries.get(playerId);
+        if (last != null && last.isCurrent(now)) {
+            hits.increment();
+            return last;
+        }
+
+        misses.increment();
+        long epoch = invalidationEpoch.get();
+        Guild guild;
+        try {
+            guild = loader.apply(playerId);
+        } catch (RuntimeException e) {
+            if (last == null) {
+                throw e;
+            }
+            staleReads.increment();
+            return last;
+        }
+        Membership membership = new Membership(guild, now + ttlMillis.getAsLong());
+
+        // Don't keep a result an invalidation may have overtaken while it was loading
+        if (invalidationEpoch.get() == epoch) {
+            entries.put(playerId, membership);
+        } else {
+            membership.invalidated = true;
+        }
+        return membership;
+    }
+
+    /**
+     * Forget a player's guild, and that of every cached member of it, so the next lookups
+     * load them again. A guild command can change other members too, such as when the
+     * guild is disbanded or someone is kicked from it.
+     *
+     * @param playerId The UUID of the player
+     */
+    public void invalidate(UUID playerId) {
+        invalidationEpoch.incrementAndGet();
+        Membership membership = entries.get(playerId);
+        if (membership == null) {
+            return;
+        }
+
+        if (!membership.invalidated) {
+            membership.invalidated = true;
+            invalidations.increment();
+        }
+        if (membership.guildId != null) {
+            invalidateGuild(membership.guildId);
+        }
+    }
+
+    /**
+     * Forget the guild of every cached member of a guild.
+     *
+     * @param guildId The guild ID
+     */
+    private void invalidateGuild(String guildId) {
+        for (Membership membership : entries.values()) {
+            if (guildId.equals(membership.guildId) && !membership.invalidated) {
+                membership.invalidated = true;
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drop a player's entry when they leave, without counting it as an invalidation.
+     *
+     * @param playerId The UUID of the player
+     */
+    public void remove(UUID playerId) {
+        entries.remove(playerId);
+    }
+
+    /**
+     * Get the number of cached players.
+     *
+     * @return The entry count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of lookups answered from the cache since the server started.
+     *
+     * @return The hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups that had to ask GuildWars since the server started.
+     *
+     * @return The miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of lookups answered with a player's last known guild because
+     * GuildWars failed to answer.
+     *
+     * @return The stale read count
+     */
+    public long getStaleReads() {
+        return staleReads.sum();
+    }
+
+    /**
+     * Get the number of entries invalidated by guild commands since the server started.
+     *
+     * @return The invalidation count
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+}
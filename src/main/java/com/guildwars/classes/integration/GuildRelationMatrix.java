@@ -0,0 +1,262 @@
+package com.guildwars.classes.integration;
+
+import com.guildwars.model.Guild;
+import com.guildwars.model.Relation;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The relation between every pair of guilds, held as a square table of bytes.
+ * <p>
+ * Each guild gets an ordinal, a row and a column in the table. Looking up the relation
+ * between two guilds is a single array read, so sorting the targets of an ability costs
+ * one read per target. The table is refreshed from GuildWars every few seconds; only
+ * guilds whose declared relations changed since the last refresh, or that were created
+ * or deleted, have their row and column written again.
+ * <p>
+ * GuildWars lets each guild declare its own relation to another, so the two sides may
+ * disagree. The table holds the relation both sides are bound by: hostility declared by
+ * either side wins, and an alliance needs both sides to declare it. Guilds with nothing
+ * declared are neutral to each other.
+ * <p>
+ * The table is refreshed by one thread at a time; lookups are safe from any thread and
+ * may see a mix of old and new relations while a refresh is under way.
+ */
+public class GuildRelationMatrix {
+
+    private static final Relation[] RELATIONS = Relation.values();
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * A published copy of the table.
+     *
+     * @param capacity The number of rows and columns
+     * @param cells The relation ordinals, row by row
+     */
+    private record Table(int capacity, byte[] cells) {
+    }
+
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Relation>> declared = new HashMap<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private String[] guildIds = new String[INITIAL_CAPACITY];
+    private int nextOrdinal;
+    private volatile Table table = newTable(INITIAL_CAPACITY);
+    private volatile long rowsRebuilt;
+    private volatile long refreshCount;
+
+    /**
+     * Get the ordinal of a guild.
+     *
+     * @param guildId The guild ID
+     * @return The ordinal, or -1 if the guild was created after the last refresh
+     */
+    public int getOrdinal(String guildId) {
+        Integer ordinal = ordinals.get(guildId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * Get the relation between two different guilds.
+     *
+     * @param ordinal1 The ordinal of the first guild
+     * @param ordinal2 The ordinal of the second guild
+     * @return The relation, or {@link Relation#NEUTRAL} if either guild is unknown
+     */
+    public Relation getRelation(int ordinal1, int ordinal2) {
+        Table current = table;
+        if (ordinal1 < 0 || ordinal2 < 0 || ordinal1 >= current.capacity() || ordinal2 >= current.capacity()) {
+            return Relation.NEUTRAL;
+        }
+        return RELATIONS[current.cells()[ordinal1 * current.capacity() + ordinal2]];
+    }
+
+    /**
+     * Bring the table up to date with the guilds in GuildWars.
+     *
+     * @param guilds Every guild
+     */
+    public synchronized void refresh(Collection<Guild> guilds) {
+        Set<Integer> changed = new HashSet<>();
+        Set<String> seen = new HashSet<>();
+
+        for (Guild guild : guilds) {
+            String guildId = guild.getId();
+            seen.add(guildId);
+
+            // Copy the relations so later changes in GuildWars show up as a difference
+            Map<String, Relation> relations = guild.getRelations();
+            if (!relations.equals(declared.get(guildId))) {
+                declared.put(guildId, new HashMap<>(relations));
+                changed.add(assignOrdinal(guildId));
+            }
+        }
+
+        // Free the rows of deleted guilds so they read as neutral until reused
+        Table current = table;
+        for (Iterator<String> it = declared.keySet().iterator(); it.hasNext(); ) {
+            String guildId = it.next();
+            if (!seen.contains(guildId)) {
+                it.remove();
+                int ordinal = ordinals.remove(guildId);
+                guildIds[ordinal] = null;
+                freeOrdinals.push(ordinal);
+                clear(current, ordinal);
+                changed.remove(ordinal);
+            }
+        }
+
+        if (nextOrdinal > current.capacity()) {
+            current = grow(current, nextOrdinal);
+        }
+        for (int ordinal : changed) {
+            rebuild(current, ordinal);
+        }
+        rowsRebuilt += changed.size();
+        refreshCount++;
+
+        // Publish the writes to threads reading the table
+        table = current;
+    }
+
+    /**
+     * Get the number of guilds in the table.
+     *
+     * @return The guild count
+     */
+    public int getGuildCount() {
+        return ordinals.size();
+    }
+
+    /**
+     * Get the number of guild rows written since the server started.
+     *
+     * @return The row count
+     */
+    public long getRowsRebuilt() {
+        return rowsRebuilt;
+    }
+
+    /**
+     * Get the number of refreshes since the server started.
+     *
+     * @return The refresh count
+     */
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    /**
+     * Get a guild's ordinal, giving it one if it is new.
+     *
+     * @param guildId The guild ID
+     * @return The ordinal
+     */
+    private int assignOrdinal(String guildId) {
+        Integer existing = ordinals.get(guildId);
+        if (existing != null) {
+            return existing;
+        }
+
+        int ordinal = freeOrdinals.isEmpty() ? nextOrdinal++ : freeOrdinals.pop();
+        if (ordinal >= guildIds.length) {
+            guildIds = Arrays.copyOf(guildIds, guildIds.length * 2);
+        }
+        guildIds[ordinal] = guildId;
+        ordinals.put(guildId, ordinal);
+        return ordinal;
+    }
+
+    /**
+     * Write a guild's row and column from the relations declared on both sides.
+     *
+     * @param current The table to write
+     * @param ordinal The guild's ordinal
+     */
+    private void rebuild(Table current, int ordinal) {
+        String guildId = guildIds[ordinal];
+        Map<String, Relation> own = declared.get(guildId);
+        for (int other = 0; other < nextOrdinal; other++) {
+            String otherId = guildIds[other];
+            if (otherId == null || other == ordinal) {
+                continue;
+            }
+            byte relation = (byte) combine(own.get(otherId), declared.get(otherId).get(guildId)).ordinal();
+            current.cells()[ordinal * current.capacity() + other] = relation;
+            current.cells()[other * current.capacity() + ordinal] = relation;
+        }
+    }
+
+    /**
+     * Reset a guild's row and column to neutral.
+     *
+     * @param current The table to write
+     * @param ordinal The guild's ordinal
+     */
+    private static void clear(Table current, int ordinal) {
+        byte neutral = (byte) Relation.NEUTRAL.ordinal();
+        int capacity = current.capacity();
+        if (ordinal >= capacity) {
+            return;
+        }
+        Arrays.fill(current.cells(), ordinal * capacity, (ordinal + 1) * capacity, neutral);
+        for (int row = 0; row < capacity; row++) {
+            current.cells()[row * capacity + ordinal] = neutral;
+        }
+    }
+
+    /**
+     * Copy the table into a larger one that fits a number of guilds.
+     *
+     * @param current The table to copy
+     * @param guildCount The number of guilds to fit
+     * @return The larger table
+     */
+    private static Table grow(Table current, int guildCount) {
+        int capacity = current.capacity();
+        while (capacity < guildCount) {
+            capacity *= 2;
+        }
+
+        Table grown = newTable(capacity);
+        for (int row = 0; row < current.capacity(); row++) {
+            System.arraycopy(current.cells(), row * current.capacity(), grown.cells(), row * capacity, current.capacity());
+        }
+        return grown;
+    }
+
+    private static Table newTable(int capacity) {
+        byte[] cells = new byte[capacity * capacity];
+        Arrays.fill(cells, (byte) Relation.NEUTRAL.ordinal());
+        return new Table(capacity, cells);
+    }
+
+    /**
+     * Work out the relation two guilds are bound by from what each side declared.
+     *
+     * @param declared1 The relation the first guild declared, or null
+     * @param declared2 The relation the second guild declared, or null
+     * @return The combined relation
+     */
+    private static Relation combine(Relation declared1, Relation declared2) {
+        if (declared1 == Relation.WAR || declared2 == Relation.WAR) {
+            return Relation.WAR;
+        }
+        if (declared1 == Relation.ENEMY || declared2 == Relation.ENEMY) {
+            return Relation.ENEMY;
+        }
+        if (declared1 == Relation.ALLY && declared2 == Relation.ALLY) {
+            return Relation.ALLY;
+        }
+        return Relation.NEUTRAL;
+    }
+}
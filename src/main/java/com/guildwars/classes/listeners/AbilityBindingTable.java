@@ -0,0 +1,103 @@
+package com.guildwars.classes.listeners;
+
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.managers.ClassManager;
+import com.guildwars.classes.model.PlayerClass;
+import org.bukkit.Material;
+import org.bukkit.inventory.EquipmentSlot;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The configured ability bindings of every class, arranged for lookup by click and item.
+ * <p>
+ * Bindings are read once from the config and grouped by the item they use, with one map
+ * for right clicks and one for left clicks. Most clicks are with items no class uses,
+ * which a single map lookup turns away before anything else about the click is checked.
+ * A table never changes once built; a new one is built when the config is reloaded.
+ */
+final class AbilityBindingTable {
+
+    private static final Entry[] NONE = new Entry[0];
+
+    /**
+     * A binding, resolved against the registered classes.
+     *
+     * @param classOrdinal The ordinal of the class the binding belongs to
+     * @param ability The ability slot triggered
+     * @param sneaking Whether the player must be sneaking, or null for either
+     * @param hand The hand the item must be in, or null for either
+     * @param cancel Whether the click is cancelled so the item's normal use does not happen
+     */
+    record Entry(int classOrdinal, int ability, Boolean sneaking, EquipmentSlot hand, boolean cancel) {
+
+        /**
+         * Check whether a click meets this binding's sneak and hand requirements.
+         *
+         * @param classOrdinal The ordinal of the player's class
+         * @param sneaking Whether the player is sneaking
+         * @param hand The hand the click was made with
+         * @return True if the binding applies
+         */
+        boolean matches(int classOrdinal, boolean sneaking, EquipmentSlot hand) {
+            return this.classOrdinal == classOrdinal
+                    && (this.sneaking == null || this.sneaking == sneaking)
+                    && (this.hand == null || this.hand == hand);
+        }
+    }
+
+    private final ClassConfig source;
+    private final Map<Material, Entry[]> rightClick = new EnumMap<>(Material.class);
+    private final Map<Material, Entry[]> leftClick = new EnumMap<>(Material.class);
+
+    /**
+     * Build the table for a config.
+     *
+     * @param config The config to read the bindings from
+     * @param classManager The class manager, used to find each class's ordinal
+     */
+    AbilityBindingTable(ClassConfig config, ClassManager classManager) {
+        this.source = config;
+        for (Map.Entry<String, List<ClassConfig.Binding>> classBindings : config.bindings().entrySet()) {
+            PlayerClass playerClass = classManager.getClassById(classBindings.getKey());
+            if (playerClass == null || playerClass.getOrdinal() < 0) {
+                continue;
+            }
+
+            for (ClassConfig.Binding binding : classBindings.getValue()) {
+                Entry entry = new Entry(playerClass.getOrdinal(), binding.ability(), binding.sneaking(), binding.hand(), binding.cancel());
+                Map<Material, Entry[]> clicks = binding.leftClick() ? leftClick : rightClick;
+                for (Material item : binding.items()) {
+                    Entry[] entries = clicks.getOrDefault(item, NONE);
+                    entries = Arrays.copyOf(entries, entries.length + 1);
+                    entries[entries.length - 1] = entry;
+                    clicks.put(item, entries);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether this table was built from a config.
+     *
+     * @param config The config
+     * @return True if the table reflects that config
+     */
+    boolean isFor(ClassConfig config) {
+        return source == config;
+    }
+
+    /**
+     * Get the bindings for a click with an item.
+     *
+     * @param leftClick True for a left click, false for a right click
+     * @param item The item clicked with
+     * @return The bindings, or null if no class binds that click
+     */
+    Entry[] get(boolean leftClick, Material item) {
+        return (leftClick ? this.leftClick : rightClick).get(item);
+    }
+}
@@ -1,9 +1,12 @@
 package com.guildwars.classes.listeners;
 
 import com.guildwars.classes.GuildWarsClasses;
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.managers.ClassManager;
+import com.guildwars.classes.managers.PlayerSession;
 import com.guildwars.classes.model.PlayerClass;
-import org.bukkit.Material;
 import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
@@ -12,11 +15,17 @@ import org.bukkit.inventory.ItemStack;
 
 /**
  * Listener for class ability triggers.
+ * <p>
+ * Which clicks trigger which abilities is set by the bindings in the config. Clicks no
+ * binding uses are turned away before the player's class is looked up. The same ability
+ * is not cast twice in one tick when a click fires the event more than once, as the
+ * ability executor only accepts one pending cast per player.
  */
 public class ClassAbilityListener implements Listener {
 
     private final GuildWarsClasses plugin;
-    
+    private volatile AbilityBindingTable bindings;
+
     /**
      * Creates a new class ability listener.
      *
@@ -25,47 +34,78 @@ public class ClassAbilityListener implements Listener {
     public ClassAbilityListener(GuildWarsClasses plugin) {
         this.plugin = plugin;
     }
-    
+
     /**
      * Handle player interaction events to trigger class abilities.
      */
     @EventHandler
     public void onPlayerInteract(PlayerInteractEvent event) {
-        Player player = event.getPlayer();
-        Action action = event.getAction();
         ItemStack item = event.getItem();
-        
+        if (item == null) {
+            return;
+        }
+
+        Action action = event.getAction();
+        boolean leftClick;
+        if (action == Action.RIGHT_CLICK_AIR || action == Action.RIGHT_CLICK_BLOCK) {
+            leftClick = false;
+        } else if (action == Action.LEFT_CLICK_AIR || action == Action.LEFT_CLICK_BLOCK) {
+            leftClick = true;
+        } else {
+            return;
+        }
+
+        // Ignore interactions until class data has loaded
+        ClassManager classManager = plugin.getClassManager();
+        if (!classManager.isReady()) {
+            return;
+        }
+
+        // Skip items no class binds to this click
+        AbilityBindingTable.Entry[] entries = getBindings(classManager).get(leftClick, item.getType());
+        if (entries == null) {
+            return;
+        }
+
+        // Skip clicks another plugin has stopped the item from being used for. Clicks on
+        // air arrive cancelled, so the cancelled flag itself can't be used for this.
+        if (event.useItemInHand() == Event.Result.DENY) {
+            return;
+        }
+
         // Check if the player has a class
-        PlayerClass playerClass = plugin.getClassManager().getPlayerClass(player.getUniqueId());
+        Player player = event.getPlayer();
+        PlayerSession session = classManager.getSession(player.getUniqueId());
+        PlayerClass playerClass = session != null ? session.getPlayerClass() : null;
         if (playerClass == null) {
             return;
         }
-        
-        // Handle right-click abilities
-        if ((action == Action.RIGHT_CLICK_AIR || action == Action.RIGHT_CLICK_BLOCK)) {
-            // Healer's primary ability - triggered by right-clicking with a stick
-            if (playerClass.getTypeName().equals("healer") && item != null && item.getType() == Material.STICK) {
-                event.setCancelled(true);
-                playerClass.performPrimaryAbility(player);
-            }
-            
-            // Orc's primary ability - triggered by right-clicking with an axe
-            if (playerClass.getTypeName().equals("orc") && item != null && 
-                (item.getType() == Material.WOODEN_AXE || 
-                 item.getType() == Material.STONE_AXE || 
-                 item.getType() == Material.IRON_AXE || 
-                 item.getType() == Material.GOLDEN_AXE || 
-                 item.getType() == Material.DIAMOND_AXE || 
-                 item.getType() == Material.NETHERITE_AXE)) {
-                
-                // Don't cancel the event for Orc's ability to allow normal axe usage
-                playerClass.performPrimaryAbility(player);
+
+        int classOrdinal = playerClass.getOrdinal();
+        boolean sneaking = player.isSneaking();
+        for (AbilityBindingTable.Entry entry : entries) {
+            if (entry.matches(classOrdinal, sneaking, event.getHand())) {
+                if (entry.cancel()) {
+                    event.setCancelled(true);
+                }
+                classManager.queueAbility(session, entry.ability());
             }
         }
-        
-        // Handle left-click abilities (for future expansion)
-        if ((action == Action.LEFT_CLICK_AIR || action == Action.LEFT_CLICK_BLOCK)) {
-            // Currently no left-click abilities implemented
+    }
+
+    /**
+     * Get the binding table for the current config, building it again after a reload.
+     *
+     * @param classManager The class manager
+     * @return The binding table
+     */
+    private AbilityBindingTable getBindings(ClassManager classManager) {
+        ClassConfig config = plugin.getConfigManager().get();
+        AbilityBindingTable table = bindings;
+        if (table == null || !table.isFor(config)) {
+            table = new AbilityBindingTable(config, classManager);
+            bindings = table;
         }
+        return table;
     }
 }
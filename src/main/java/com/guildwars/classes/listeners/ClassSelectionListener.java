@@ -1,12 +1,16 @@
 package com.guildwars.classes.listeners;
 
 import com.guildwars.classes.GuildWarsClasses;
-import com.guildwars.classes.model.PlayerClass;
+import com.guildwars.classes.managers.ClassManager;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
 
 /**
  * Listener for player join/leave events to apply class effects.
@@ -25,33 +29,68 @@ public class ClassSelectionListener implements Listener {
     }
     
     /**
-     * Handle player join events to apply class effects.
+     * Load the player's class from storage while they are logging in.
+     * Runs on an asynchronous thread, after other plugins have decided whether to allow the login.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        
+        plugin.getClassManager().prefetchPlayerClass(event.getUniqueId());
+    }
+    
+    /**
+     * Forget the class loaded at pre-login when the login is refused afterwards, such as
+     * by a ban or a full server.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            plugin.getClassManager().discardPrefetch(event.getPlayer().getUniqueId());
+        }
+    }
+    
+    /**
+     * Handle player join events to apply class effects. The player's class effects are
+     * applied from the join queue, from the next tick on, once they are fully loaded.
      */
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        ClassManager classManager = plugin.getClassManager();
         
-        // Apply class effects if the player has a class
-        PlayerClass playerClass = plugin.getClassManager().getPlayerClass(player.getUniqueId());
-        if (playerClass != null) {
-            // Schedule the effect application for the next tick to ensure the player is fully loaded
-            plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
-                playerClass.applyEffects(player);
-            }, 1L);
+        if (!classManager.isReady()) {
+            // The player joined while class data was loading; pick them up once it is ready
+            classManager.whenReady(() -> {
+                if (player.isOnline()) {
+                    classManager.handlePlayerJoin(player);
+                }
+            });
+            return;
         }
+        
+        classManager.handlePlayerJoin(player);
+    }
+    
+    /**
+     * Put back class modifiers a respawning player lost when they died.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        plugin.getClassManager().handlePlayerRespawn(event.getPlayer());
     }
     
     /**
-     * Handle player quit events to remove class effects.
+     * Handle player quit events to close the player's session. Class effects are not
+     * saved with the player, so there is nothing to take away.
      */
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
         
-        // Remove class effects if the player has a class
-        PlayerClass playerClass = plugin.getClassManager().getPlayerClass(player.getUniqueId());
-        if (playerClass != null) {
-            playerClass.removeEffects(player);
-        }
+        // Keep the class only in the recently offline cache
+        plugin.getClassManager().handlePlayerQuit(player);
     }
 }
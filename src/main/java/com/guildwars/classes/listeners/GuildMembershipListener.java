@@ -0,0 +1,84 @@
+package com.guildwars.classes.listeners;
+
+import com.guildwars.classes.GuildWarsClasses;
+import com.guildwars.classes.integration.GuildIntegration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Listener that keeps the guild membership cache in step with GuildWars.
+ * <p>
+ * GuildWars fires no events when players join or leave guilds, so its commands are
+ * watched instead. Once a guild command that may change membership or relations has run,
+ * the affected cache entries are dropped, and the relation table is refreshed for the
+ * commands that change relations.
+ */
+public class GuildMembershipListener implements Listener {
+
+    // The GuildWars guild command and its aliases
+    private static final Set<String> GUILD_COMMANDS = Set.of("guild", "g", "gw");
+
+    // Subcommands that only show information
+    private static final Set<String> READ_ONLY_SUBCOMMANDS = Set.of("info", "list", "help", "who", "show", "top", "map");
+
+    // Subcommands that change relations between guilds
+    private static final Set<String> RELATION_SUBCOMMANDS = Set.of("ally", "enemy", "war", "neutral", "relation", "truce", "peace");
+
+    private final GuildWarsClasses plugin;
+
+    /**
+     * Creates a new guild membership listener.
+     *
+     * @param plugin The GuildWarsClasses plugin instance
+     */
+    public GuildMembershipListener(GuildWarsClasses plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Drop a leaving player's cached guild.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getGuildIntegration().forgetMembership(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Invalidate cached guilds after a guild command that may have changed them.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
+        String[] words = event.getMessage().substring(1).trim().split("\\s+");
+        String command = words[0].toLowerCase(Locale.ROOT);
+
+        // Accept the namespaced form, such as /guildwars:guild
+        int namespace = command.indexOf(':');
+        if (namespace >= 0) {
+            command = command.substring(namespace + 1);
+        }
+        if (!GUILD_COMMANDS.contains(command)) {
+            return;
+        }
+
+        String subcommand = words.length > 1 ? words[1].toLowerCase(Locale.ROOT) : "";
+        if (subcommand.isEmpty() || READ_ONLY_SUBCOMMANDS.contains(subcommand)) {
+            return;
+        }
+
+        // The command runs right after this event, so act once it has
+        Player player = event.getPlayer();
+        GuildIntegration guildIntegration = plugin.getGuildIntegration();
+        plugin.getTaskScheduler().runForEntityLater(player,
+                () -> guildIntegration.invalidateMembership(player.getUniqueId()), 1L);
+        if (RELATION_SUBCOMMANDS.contains(subcommand)) {
+            plugin.getTaskScheduler().runGlobal(guildIntegration::refreshRelations);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.guildwars.classes.listeners;
+
+import com.guildwars.classes.GuildWarsClasses;
+import com.guildwars.classes.managers.PlayerSession;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+/**
+ * Listener that keeps the player grid up to date as players move around and between worlds.
+ */
+public class PlayerGridListener implements Listener {
+
+    private final GuildWarsClasses plugin;
+    
+    /**
+     * Creates a new player grid listener.
+     *
+     * @param plugin The GuildWarsClasses plugin instance
+     */
+    public PlayerGridListener(GuildWarsClasses plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Record where players move to, and move them into a new column when they walk across
+     * a chunk border.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        
+        // Turning on the spot leaves the hitbox where it was
+        if (from.getX() == to.getX() && from.getY() == to.getY() && from.getZ() == to.getZ()) {
+            return;
+        }
+        
+        update(event.getPlayer(), to);
+    }
+    
+    /**
+     * Move players into the column they teleport to.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        update(event.getPlayer(), event.getTo());
+    }
+    
+    /**
+     * Move players into the grid of the world they changed to.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        update(event.getPlayer(), event.getPlayer().getLocation());
+    }
+    
+    /**
+     * Move players to where they respawn.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        update(event.getPlayer(), event.getRespawnLocation());
+    }
+    
+    /**
+     * Update a player's position in the grid if they have a session.
+     *
+     * @param player The player
+     * @param location Where the player is going
+     */
+    private void update(Player player, Location location) {
+        PlayerSession session = plugin.getClassManager().getSession(player.getUniqueId());
+        if (session != null) {
+            plugin.getClassManager().getPlayerGrid().update(session, location);
+        }
+    }
+}
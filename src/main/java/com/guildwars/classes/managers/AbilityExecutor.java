@@ -0,0 +1,271 @@
+package com.guildwars.classes.managers;
+
+import com.guildwars.classes.config.ConfigManager;
+import com.guildwars.classes.scheduler.TaskScheduler;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Runs ability casts under a per-tick time budget.
+ * <p>
+ * Casts are queued when a player triggers an ability and run at the next tick, oldest
+ * first, until the tick's budget is spent. Whatever is left over waits for the next
+ * tick, so a burst of casts is spread out instead of landing in one tick. Effects that
+ * take several steps, such as a beam travelling outward, run as {@link AbilityTask}s that
+ * do one stage per tick under the same budget. Each tick makes progress on at least one
+ * task or cast, however small the budget.
+ * <p>
+ * On Folia there is no single tick to budget. Each cast runs at the next tick of the
+ * caster's region instead, and each task's stages run on the region of the player it
+ * follows, so casts in different regions run side by side.
+ */
+public class AbilityExecutor {
+
+    /**
+     * Runs a queued cast.
+     */
+    @FunctionalInterface
+    public interface CastHandler {
+
+        /**
+         * Run a cast.
+         *
+         * @param session The session of the player casting
+         * @param ability The ability slot
+         */
+        void cast(PlayerSession session, int ability);
+    }
+
+    /**
+     * A queued cast.
+     *
+     * @param session The session of the player casting
+     * @param ability The ability slot
+     */
+    private record CastRequest(PlayerSession session, int ability) {
+    }
+
+    private final ConfigManager configManager;
+    private final TaskScheduler scheduler;
+    private final CastHandler castHandler;
+    private final Deque<CastRequest> casts = new ArrayDeque<>();
+    private List<AbilityTask> tasks = new ArrayList<>();
+    private List<AbilityTask> nextTasks = new ArrayList<>();
+
+    private int lastTickCasts;
+    private int peakTickCasts;
+    private long totalCasts;
+    private long deferredCasts;
+    private long budgetOverruns;
+    private double lastTickMillis;
+
+    /**
+     * Creates a new ability executor.
+     *
+     * @param configManager The source of the tick budget
+     * @param scheduler The scheduler used on Folia
+     * @param castHandler Runs each cast when its turn comes
+     */
+    public AbilityExecutor(ConfigManager configManager, TaskScheduler scheduler, CastHandler castHandler) {
+        this.configManager = configManager;
+        this.scheduler = scheduler;
+        this.castHandler = castHandler;
+    }
+
+    /**
+     * Queue a cast for the next tick. A player can only have one cast of each ability
+     * waiting at a time; clicking again before it runs does nothing.
+     *
+     * @param session The session of the player casting
+     * @param ability The ability slot
+     * @return True if the cast was queued, false if one was already waiting
+     */
+    public boolean submit(PlayerSession session, int ability) {
+        if (!session.markCastPending(ability)) {
+            return false;
+        }
+        if (scheduler.isFolia()) {
+            // Each region ticks on its own, so run on the caster's region instead of the shared queue
+            scheduler.runForEntityLater(session.getPlayer(), () -> {
+                session.clearCastPending(ability);
+                castHandler.cast(session, ability);
+                recordFoliaCast();
+            }, 1L);
+            return true;
+        }
+        synchronized (this) {
+            casts.addLast(new CastRequest(session, ability));
+        }
+        return true;
+    }
+
+    /**
+     * Start a multi-stage task. The first stage runs straight away; later stages run one
+     * per tick. The task stops early if the player it follows leaves.
+     *
+     * @param anchor The player whose region runs the task on Folia, usually the caster
+     * @param task The task
+     */
+    public void schedule(Entity anchor, AbilityTask task) {
+        if (!task.runStage()) {
+            return;
+        }
+        if (scheduler.isFolia()) {
+            scheduler.runForEntityEveryTick(anchor, task::runStage);
+            return;
+        }
+        synchronized (this) {
+            nextTasks.add(task);
+        }
+    }
+
+    /**
+     * Run queued stages and casts until the tick's budget is spent. Called once per tick
+     * on the main thread; does nothing on Folia, where casts run on their own regions.
+     */
+    public synchronized void tick() {
+        if (scheduler.isFolia()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + (long) (configManager.get().execution().tickBudgetMillis() * 1_000_000);
+        boolean progressed = false;
+
+        // Stages of running tasks go first so effects already under way keep moving
+        List<AbilityTask> running = nextTasks;
+        nextTasks = tasks;
+        tasks = running;
+        int index = 0;
+        for (; index < running.size(); index++) {
+            if (progressed && System.nanoTime() >= deadline) {
+                break;
+            }
+            AbilityTask task = running.get(index);
+            if (task.runStage()) {
+                nextTasks.add(task);
+            }
+            progressed = true;
+        }
+
+        // Stages cut off by the budget run first next tick, ahead of tasks started this tick
+        if (index < running.size()) {
+            nextTasks.addAll(0, running.subList(index, running.size()));
+        }
+        running.clear();
+
+        int tickCasts = 0;
+        while (!casts.isEmpty()) {
+            if (progressed && System.nanoTime() >= deadline) {
+                break;
+            }
+            CastRequest request = casts.pollFirst();
+            PlayerSession session = request.session();
+            session.clearCastPending(request.ability());
+            progressed = true;
+
+            // Skip casts of players who left while the cast was waiting
+            if (!session.getPlayer().isOnline()) {
+                continue;
+            }
+            castHandler.cast(session, request.ability());
+            tickCasts++;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > deadline - start) {
+            budgetOverruns++;
+        }
+        deferredCasts += casts.size();
+        lastTickCasts = tickCasts;
+        peakTickCasts = Math.max(peakTickCasts, tickCasts);
+        totalCasts += tickCasts;
+        lastTickMillis = elapsed / 1_000_000.0;
+    }
+
+    /**
+     * Count a cast run on a Folia region.
+     */
+    private synchronized void recordFoliaCast() {
+        lastTickCasts = 1;
+        peakTickCasts = Math.max(peakTickCasts, 1);
+        totalCasts++;
+    }
+
+    /**
+     * Get the number of casts waiting for a tick.
+     *
+     * @return The queued cast count
+     */
+    public synchronized int getQueuedCasts() {
+        return casts.size();
+    }
+
+    /**
+     * Get the number of multi-stage tasks still running.
+     *
+     * @return The running task count
+     */
+    public synchronized int getRunningTasks() {
+        return nextTasks.size();
+    }
+
+    /**
+     * Get the number of casts run in the last tick.
+     *
+     * @return The cast count
+     */
+    public synchronized int getLastTickCasts() {
+        return lastTickCasts;
+    }
+
+    /**
+     * Get the most casts run in a single tick since the server started.
+     *
+     * @return The cast count
+     */
+    public synchronized int getPeakTickCasts() {
+        return peakTickCasts;
+    }
+
+    /**
+     * Get the number of casts run since the server started.
+     *
+     * @return The cast count
+     */
+    public synchronized long getTotalCasts() {
+        return totalCasts;
+    }
+
+    /**
+     * Get how many times a cast was carried over to a later tick because the budget ran out.
+     * A cast that waits three ticks counts three times.
+     *
+     * @return The deferral count
+     */
+    public synchronized long getDeferredCasts() {
+        return deferredCasts;
+    }
+
+    /**
+     * Get the number of ticks in which the executor ran past its budget.
+     *
+     * @return The overrun count
+     */
+    public synchronized long getBudgetOverruns() {
+        return budgetOverruns;
+    }
+
+    /**
+     * Get how long the executor ran in the last tick.
+     *
+     * @return The time in milliseconds
+     */
+    public synchronized double getLastTickMillis() {
+        return lastTickMillis;
+    }
+}
@@ -0,0 +1,17 @@
+package com.guildwars.classes.managers;
+
+/**
+ * An ability effect that plays out over several ticks, one stage per tick.
+ * Started with {@link AbilityExecutor#schedule(org.bukkit.entity.Entity, AbilityTask)}.
+ */
+@FunctionalInterface
+public interface AbilityTask {
+
+    /**
+     * Run the next stage. Players involved may have left since the last stage, so
+     * implementations should check they are still valid.
+     *
+     * @return True if there are more stages to run, false if the task is finished
+     */
+    boolean runStage();
+}
@@ -5,25 +5,95 @@ import com.guildwars.classes.integration.GuildIntegration;
 import com.guildwars.classes.model.HealerClass;
 import com.guildwars.classes.model.OrcClass;
 import com.guildwars.classes.model.PlayerClass;
+import com.guildwars.classes.particles.ParticleRenderer;
+import com.guildwars.classes.scheduler.TaskScheduler;
 import org.bukkit.Bukkit;
 import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.entity.Player;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 /**
  * Manages player class assignments and class-related operations.
+ * <p>
+ * Only online players are kept in memory, plus a bounded cache of players who recently
+ * left. A player's class is read from storage while they log in, before they reach the
+ * main thread. Classes of other offline players can be looked up with
+ * {@link #getPlayerClassAsync(UUID)}.
+ * <p>
+ * Class data is loaded in the background when the plugin enables. Until {@link #isReady()}
+ * returns true, commands and listeners should not use the manager.
+ * <p>
+ * Lookups ({@link #getPlayerClass(UUID)}, {@link #getClassById(String)},
+ * {@link #getAvailableClasses()}) are safe to call from any thread and never lock.
+ * Changes to a player's class are made on the thread that owns the player: the main
+ * thread on Paper, or the player's region on Folia.
+ * <p>
+ * Online and recently offline players are kept in a {@link PlayerClassIndex}, which
+ * holds each player's class as an ordinal into the {@link ClassRegistry}. Ability
+ * cooldowns are tracked by the {@link CooldownService}. Each online player also has a
+ * {@link PlayerSession}, which listeners and commands resolve once per event, and sits
+ * in the {@link PlayerGrid} that abilities find their targets in.
  */
 public class ClassManager {
 
+    /**
+     * Marker stored for prefetched players that have no class.
+     */
+    private static final String NO_CLASS = "";
+    
+    /**
+     * How long a prefetched class is kept for a login that never turns into a join.
+     */
+    private static final long PREFETCH_EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    
+    /**
+     * A class read from storage ahead of a player's join.
+     *
+     * @param classId The class ID, or {@link #NO_CLASS} if the player has no class
+     * @param fetchedAt When the class was read, in {@link System#nanoTime()} units
+     */
+    private record Prefetched(String classId, long fetchedAt) {
+    }
+    
+    private static final int DEFAULT_OFFLINE_CACHE_SIZE = 500;
+    private static final int SAMPLE_TICKS = 20;
+
     private final GuildWarsClasses plugin;
+    private final TaskScheduler scheduler;
     private final GuildIntegration guildIntegration;
-    private final Map<UUID, PlayerClass> playerClasses;
-    private final List<PlayerClass> availableClasses;
+    private final PlayerClassIndex playerIndex;
+    private final CooldownService cooldownService;
+    private final SessionRegistry sessions;
+    private final PlayerGrid playerGrid;
+    private final QualityGovernor qualityGovernor;
+    private final ParticleRenderer particleRenderer;
+    private final AbilityExecutor abilityExecutor;
+    private final EffectReconciler effectReconciler;
+    private final JoinQueue joinQueue;
+    private final ClassServices classServices;
+    private final Set<UUID> recentPlayerOrder;
+    private final int offlineCacheSize;
+    private final Map<UUID, Prefetched> prefetchedClasses;
+    private final ClassRegistry classRegistry;
+    private final CompletableFuture<Void> ready;
+    private int timerTicks;
+    private boolean tickTimeUnsupported;
     
     /**
      * Creates a new class manager.
@@ -32,18 +102,27 @@ public class ClassManager {
      */
     public ClassManager(GuildWarsClasses plugin) {
         this.plugin = plugin;
+        this.scheduler = plugin.getTaskScheduler();
         this.guildIntegration = plugin.getGuildIntegration();
-        this.playerClasses = new HashMap<>();
-        this.availableClasses = new ArrayList<>();
+        this.playerIndex = new PlayerClassIndex();
+        this.cooldownService = new CooldownService(this::notifyAbilityReady);
+        this.sessions = new SessionRegistry(cooldownService);
+        this.playerGrid = new PlayerGrid();
+        this.qualityGovernor = new QualityGovernor(plugin.getConfigManager(), this::getAverageTickTime);
+        this.particleRenderer = new ParticleRenderer(plugin.getConfigManager(), playerGrid, qualityGovernor);
+        this.abilityExecutor = new AbilityExecutor(plugin.getConfigManager(), scheduler, this::performAbility);
+        this.effectReconciler = new EffectReconciler(plugin.getConfigManager(), guildIntegration);
+        this.joinQueue = new JoinQueue(plugin.getConfigManager(), scheduler, plugin.getLogger(), this::applyJoinEffects);
+        this.classServices = new ClassServices(cooldownService, playerGrid, particleRenderer, qualityGovernor, abilityExecutor, scheduler,
+                sessions, guildIntegration);
+        this.recentPlayerOrder = new LinkedHashSet<>();
+        this.offlineCacheSize = Math.max(0, plugin.getConfig().getInt("settings.offline-cache-size", DEFAULT_OFFLINE_CACHE_SIZE));
+        this.prefetchedClasses = new ConcurrentHashMap<>();
+        this.classRegistry = new ClassRegistry();
+        this.ready = new CompletableFuture<>();
         
         // Register available classes
         registerClasses();
-        
-        // Load player classes from storage
-        loadPlayerClasses();
-        
-        // Apply class effects to online players
-        applyClassEffectsToOnlinePlayers();
     }
     
     /**
@@ -51,68 +130,384 @@ public class ClassManager {
      */
     private void registerClasses() {
         // Register Orc class
-        availableClasses.add(new OrcClass());
+        registerClass(new OrcClass(plugin.getConfigManager()));
         
         // Register Healer class
-        availableClasses.add(new HealerClass());
+        registerClass(new HealerClass(plugin.getConfigManager()));
         
-        plugin.getLogger().info("Registered " + availableClasses.size() + " classes.");
+        plugin.getLogger().info("Registered " + classRegistry.size() + " classes.");
+    }
+    
+    /**
+     * Register a class so players can select it. Other plugins can use this to add
+     * their own classes. Must be called on the main thread.
+     *
+     * @param playerClass The class to register
+     * @throws IllegalArgumentException If a class with the same ID is already registered
+     */
+    public void registerClass(PlayerClass playerClass) {
+        classRegistry.register(playerClass, classServices);
     }
     
     /**
-     * Load player classes from storage.
+     * Open storage and load the classes of players already online (e.g. after a reload)
+     * without blocking the main thread. Once the classes are in place the manager becomes
+     * ready and class effects are applied to online players a few at a time.
+     *
+     * @return A future completed when the manager is ready, or exceptionally if loading failed
      */
-    private void loadPlayerClasses() {
-        Map<UUID, String> storedClasses = plugin.getClassStorage().loadPlayerClasses();
+    public CompletableFuture<Void> load() {
+        guildIntegration.refreshRelations();
         
-        for (Map.Entry<UUID, String> entry : storedClasses.entrySet()) {
-            UUID playerId = entry.getKey();
-            String classId = entry.getValue();
+        // Cooldowns are counted in server ticks
+        scheduler.runGlobalTimer(() -> {
+            cooldownService.tick();
+            abilityExecutor.tick();
+            joinQueue.tick();
+            
+            if (++timerTicks % SAMPLE_TICKS == 0) {
+                // Catch movement that fires no move event, such as riding a vehicle
+                for (PlayerSession session : sessions.getAll()) {
+                    Player player = session.getPlayer();
+                    scheduler.runForEntity(player, () -> {
+                        playerGrid.update(session, player.getLocation());
+                        
+                        // Pick up guild joins and leaves and reloaded settings, then put back
+                        // modifiers that were taken away behind the reconciler's back
+                        effectReconciler.reconcile(session);
+                        effectReconciler.verify(session);
+                        
+                        // Passive healing and other class effects over time
+                        PlayerClass playerClass = session.getPlayerClass();
+                        if (playerClass != null) {
+                            playerClass.tickPassive(player, SAMPLE_TICKS);
+                        }
+                    });
+                }
+                
+                qualityGovernor.sample();
+            }
             
-            PlayerClass playerClass = getClassById(classId);
-            if (playerClass != null) {
-                playerClasses.put(playerId, playerClass);
+            // Pick up relation changes made in GuildWars
+            if (timerTicks % (plugin.getConfigManager().get().targeting().relationRefreshSeconds() * 20) == 0) {
+                guildIntegration.refreshRelations();
             }
+            return true;
+        }, 1L, 1L);
+        
+        List<UUID> onlinePlayers = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            onlinePlayers.add(player.getUniqueId());
         }
         
-        plugin.getLogger().info("Loaded " + playerClasses.size() + " player classes from storage.");
+        plugin.getClassStorage().openAsync()
+                .thenApply(ignored -> readPlayerClasses(onlinePlayers))
+                .whenComplete((loaded, error) -> {
+                    if (error != null) {
+                        ready.completeExceptionally(error);
+                    } else {
+                        scheduler.runGlobal(() -> finishLoading(loaded));
+                    }
+                });
+        
+        return ready;
     }
     
     /**
-     * Apply class effects to all online players.
+     * Read the classes of a set of players from storage.
+     * Runs on the storage thread.
+     *
+     * @param playerIds The players to read
+     * @return The players that have a class, mapped to their class ID
      */
-    private void applyClassEffectsToOnlinePlayers() {
+    private Map<UUID, String> readPlayerClasses(List<UUID> playerIds) {
+        Map<UUID, String> loaded = new HashMap<>();
+        for (UUID playerId : playerIds) {
+            try {
+                String classId = plugin.getClassStorage().loadPlayerClass(playerId);
+                if (classId != null) {
+                    loaded.put(playerId, classId);
+                }
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * Put the loaded classes in place, mark the manager ready and start applying
+     * class effects. Runs on the main thread.
+     *
+     * @param loaded The loaded players mapped to their class ID
+     */
+    private void finishLoading(Map<UUID, String> loaded) {
+        int loadedCount = 0;
+        for (Map.Entry<UUID, String> entry : loaded.entrySet()) {
+            Player player = Bukkit.getPlayer(entry.getKey());
+            PlayerClass playerClass = getClassById(entry.getValue());
+            
+            // Skip players who left while we were loading
+            if (player != null && playerClass != null) {
+                playerIndex.setOrdinal(player.getUniqueId(), playerClass.getOrdinal());
+                loadedCount++;
+            }
+        }
+        
+        // Players online before the load have no join event, so open their session and
+        // queue them as if they had just joined
         for (Player player : Bukkit.getOnlinePlayers()) {
-            PlayerClass playerClass = getPlayerClass(player.getUniqueId());
-            if (playerClass != null) {
-                playerClass.applyEffects(player);
+            PlayerSession session = sessions.open(player);
+            session.setPlayerClass(getPlayerClass(player.getUniqueId()));
+            playerGrid.update(session, player.getLocation());
+            joinQueue.submit(session);
+        }
+        
+        plugin.getLogger().info("Loaded " + loadedCount + " player classes from storage.");
+        ready.complete(null);
+    }
+    
+    /**
+     * Check whether class data has finished loading.
+     * Safe to call from any thread.
+     *
+     * @return True if the manager can be used
+     */
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+    
+    /**
+     * Run a task on the main thread, or the global region on Folia, once class data has
+     * finished loading. Nothing is run if loading fails.
+     *
+     * @param task The task to run
+     */
+    public void whenReady(Runnable task) {
+        ready.thenRun(() -> scheduler.runGlobal(task));
+    }
+    
+    /**
+     * Block until class data has finished loading. Must not be called on the main thread.
+     *
+     * @return True if loading succeeded
+     */
+    public boolean awaitReady() {
+        try {
+            ready.join();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Read a player's class from storage ahead of their join.
+     * Called from the asynchronous pre-login event, so this blocks on storage.
+     *
+     * @param playerId The UUID of the player logging in
+     */
+    public void prefetchPlayerClass(UUID playerId) {
+        // Hold the login until storage is open
+        if (!awaitReady()) {
+            return;
+        }
+        
+        // Drop classes of logins that were refused without this plugin hearing of it
+        long now = System.nanoTime();
+        prefetchedClasses.values().removeIf(prefetched -> now - prefetched.fetchedAt() > PREFETCH_EXPIRY_NANOS);
+        
+        try {
+            String classId = plugin.getClassStorage().loadPlayerClass(playerId);
+            prefetchedClasses.put(playerId, new Prefetched(classId != null ? classId : NO_CLASS, now));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to load class for " + playerId, e);
+        }
+    }
+    
+    /**
+     * Forget a player's prefetched class after their login was refused.
+     *
+     * @param playerId The UUID of the player whose login was refused
+     */
+    public void discardPrefetch(UUID playerId) {
+        prefetchedClasses.remove(playerId);
+    }
+    
+    /**
+     * Open a joining player's session, move their class into the online set and queue
+     * them to have their class effects applied.
+     *
+     * @param player The player who joined
+     * @return The player's session
+     */
+    public PlayerSession handlePlayerJoin(Player player) {
+        PlayerSession session = sessions.open(player);
+        session.setPlayerClass(resolveJoiningPlayerClass(player));
+        playerGrid.update(session, player.getLocation());
+        joinQueue.submit(session);
+        return session;
+    }
+    
+    /**
+     * Apply a joined player's class effects and load their guild when their turn in the
+     * join queue comes. Runs on the player's thread.
+     *
+     * @param session The player's session
+     */
+    private void applyJoinEffects(PlayerSession session) {
+        Player player = session.getPlayer();
+        
+        // Skip players who left, or left and came back with a new session, while queued
+        if (!player.isOnline() || sessions.get(session.getPlayerId()) != session) {
+            return;
+        }
+        
+        if (guildIntegration != null && guildIntegration.isEnabled()) {
+            guildIntegration.warmMembership(session);
+        }
+        
+        PlayerClass playerClass = session.getPlayerClass();
+        if (playerClass != null) {
+            effectReconciler.reconcile(session);
+            playerClass.applyEffects(player);
+        }
+    }
+    
+    /**
+     * Find a joining player's class in the cache, the prefetched classes or storage.
+     *
+     * @param player The player who joined
+     * @return The player's class, or null if they don't have one
+     */
+    private PlayerClass resolveJoiningPlayerClass(Player player) {
+        UUID playerId = player.getUniqueId();
+        Prefetched prefetchedEntry = prefetchedClasses.remove(playerId);
+        String prefetched = prefetchedEntry != null ? prefetchedEntry.classId() : null;
+        
+        // Loaded by the startup load, or left recently and still cached; either way more current than storage
+        synchronized (recentPlayerOrder) {
+            recentPlayerOrder.remove(playerId);
+        }
+        if (playerIndex.contains(playerId)) {
+            return getPlayerClass(playerId);
+        }
+        
+        if (prefetched == null) {
+            // Pre-login did not run or failed; fall back to a blocking read
+            plugin.getLogger().warning("No prefetched class for " + player.getName() + ", reading it from storage on the join thread");
+            try {
+                prefetched = plugin.getClassStorage().loadPlayerClass(playerId);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to load class for " + player.getName(), e);
+            }
+        }
+        
+        PlayerClass playerClass = prefetched == null || prefetched.isEmpty() ? null : getClassById(prefetched);
+        if (playerClass != null) {
+            playerIndex.setOrdinal(playerId, playerClass.getOrdinal());
+        }
+        return playerClass;
+    }
+    
+    /**
+     * Put back a respawned player's class modifiers once they are back in the world,
+     * rather than leaving them without until the next sweep.
+     *
+     * @param player The player who is respawning
+     */
+    public void handlePlayerRespawn(Player player) {
+        PlayerSession session = sessions.get(player.getUniqueId());
+        if (session == null) {
+            return;
+        }
+        
+        // The respawn event fires before the player is placed in the world
+        scheduler.runForEntityLater(player, () -> {
+            if (sessions.get(session.getPlayerId()) == session) {
+                effectReconciler.verify(session);
+            }
+        }, 1L);
+    }
+    
+    /**
+     * Close a leaving player's session and move them into the recently offline cache.
+     *
+     * @param player The player who left
+     */
+    public void handlePlayerQuit(Player player) {
+        UUID playerId = player.getUniqueId();
+        prefetchedClasses.remove(playerId);
+        PlayerSession session = sessions.get(playerId);
+        if (session != null) {
+            playerGrid.remove(session);
+            sessions.close(playerId);
+        }
+        
+        if (!playerIndex.contains(playerId)) {
+            return;
+        }
+        
+        if (offlineCacheSize > 0) {
+            synchronized (recentPlayerOrder) {
+                recentPlayerOrder.add(playerId);
+                evictRecentPlayers();
             }
+        } else {
+            playerIndex.remove(playerId);
+        }
+    }
+    
+    /**
+     * Drop the players who went offline longest ago until the cache fits its size.
+     * Callers hold the lock on the eviction order; readers only see the index.
+     */
+    private void evictRecentPlayers() {
+        Iterator<UUID> oldest = recentPlayerOrder.iterator();
+        while (recentPlayerOrder.size() > offlineCacheSize && oldest.hasNext()) {
+            playerIndex.remove(oldest.next());
+            oldest.remove();
         }
     }
     
     /**
      * Get a class by its ID.
+     * Safe to call from any thread.
      *
      * @param classId The ID of the class
      * @return The class, or null if not found
      */
     public PlayerClass getClassById(String classId) {
-        for (PlayerClass playerClass : availableClasses) {
-            if (playerClass.getId().equalsIgnoreCase(classId)) {
-                return playerClass;
-            }
-        }
-        return null;
+        return classRegistry.get(classId);
     }
     
     /**
      * Get a player's class.
+     * Only online and recently offline players are known; use
+     * {@link #getPlayerClassAsync(UUID)} for other offline players.
+     * Safe to call from any thread; never blocks.
      *
      * @param playerId The UUID of the player
-     * @return The player's class, or null if they don't have one
+     * @return The player's class, or null if they don't have one or are not cached
      */
     public PlayerClass getPlayerClass(UUID playerId) {
-        return playerClasses.get(playerId);
+        int ordinal = playerIndex.getOrdinal(playerId);
+        return classRegistry.get(ordinal);
+    }
+    
+    /**
+     * Get any player's class, reading it from storage if the player is not cached.
+     * Safe to call from any thread. The future may complete on the storage thread.
+     *
+     * @param playerId The UUID of the player
+     * @return A future completed with the player's class, or null if they don't have one
+     */
+    public CompletableFuture<PlayerClass> getPlayerClassAsync(UUID playerId) {
+        PlayerClass playerClass = getPlayerClass(playerId);
+        if (playerClass != null) {
+            return CompletableFuture.completedFuture(playerClass);
+        }
+        return plugin.getClassStorage().loadPlayerClassAsync(playerId).thenApply(this::getClassById);
     }
     
     /**
@@ -125,29 +520,25 @@ public class ClassManager {
     public boolean setPlayerClass(Player player, String classId) {
         UUID playerId = player.getUniqueId();
         
-        // Remove current class effects if they have one
-        PlayerClass currentClass = getPlayerClass(playerId);
-        if (currentClass != null) {
-            currentClass.removeEffects(player);
-        }
-        
-        // Get the new class
+        // Get the new class; disabled classes cannot be selected
         PlayerClass newClass = getClassById(classId);
-        if (newClass == null) {
+        if (newClass == null || !newClass.isEnabled()) {
             return false;
         }
         
         // Set the new class
-        playerClasses.put(playerId, newClass);
+        playerIndex.setOrdinal(playerId, newClass.getOrdinal());
+        PlayerSession session = sessions.get(playerId);
+        if (session != null) {
+            session.setPlayerClass(newClass);
+            
+            // Swap the old class's effects and guild bonuses for the new one's
+            effectReconciler.reconcile(session);
+        }
         
         // Apply the new class effects
         newClass.applyEffects(player);
         
-        // Apply guild bonuses if applicable
-        if (guildIntegration != null && guildIntegration.isEnabled()) {
-            guildIntegration.applyGuildBonuses(player, newClass);
-        }
-        
         // Save to storage
         plugin.getClassStorage().savePlayerClass(playerId, classId);
         
@@ -166,8 +557,13 @@ public class ClassManager {
         // Remove current class effects if they have one
         PlayerClass currentClass = getPlayerClass(playerId);
         if (currentClass != null) {
-            currentClass.removeEffects(player);
-            playerClasses.remove(playerId);
+            // Keep the entry so a rejoin knows the player has no class without asking storage
+            playerIndex.setOrdinal(playerId, PlayerClassIndex.NO_CLASS);
+            PlayerSession session = sessions.get(playerId);
+            if (session != null) {
+                session.setPlayerClass(null);
+                effectReconciler.reconcile(session);
+            }
             
             // Remove from storage
             plugin.getClassStorage().removePlayerClass(playerId);
@@ -178,59 +574,198 @@ public class ClassManager {
         return false;
     }
     
+    /**
+     * Get the server's average tick time for the quality governor.
+     *
+     * @return The tick time in milliseconds, or 0 if the server cannot report one
+     */
+    private double getAverageTickTime() {
+        if (tickTimeUnsupported) {
+            return 0;
+        }
+        try {
+            return Bukkit.getAverageTickTime();
+        } catch (UnsupportedOperationException e) {
+            // Folia has no server-wide tick time; cosmetics stay at full quality unless pinned
+            tickTimeUnsupported = true;
+            plugin.getLogger().warning("The server does not report its tick time; cosmetic quality will not adjust automatically.");
+            return 0;
+        }
+    }
+    
+    /**
+     * Tell a player on the action bar that one of their abilities is ready again.
+     * Called by the cooldown service when a cooldown runs out.
+     *
+     * @param playerId The UUID of the player
+     * @param ability The ability slot
+     */
+    private void notifyAbilityReady(UUID playerId, int ability) {
+        if (!plugin.getConfigManager().get().abilityReadyNotifications()) {
+            return;
+        }
+        
+        Player player = Bukkit.getPlayer(playerId);
+        PlayerClass playerClass = getPlayerClass(playerId);
+        if (player == null || playerClass == null) {
+            return;
+        }
+        
+        scheduler.runForEntity(player, () -> player.spigot().sendMessage(ChatMessageType.ACTION_BAR,
+                new TextComponent(ChatColor.GREEN + playerClass.getAbilityName(ability) + " is ready!")));
+    }
+    
+    /**
+     * Get an online player's session.
+     * Safe to call from any thread.
+     *
+     * @param playerId The UUID of the player
+     * @return The session, or null if the player is not online or class data is still loading
+     */
+    public PlayerSession getSession(UUID playerId) {
+        return sessions.get(playerId);
+    }
+    
+    /**
+     * Get the session registry.
+     *
+     * @return The session registry
+     */
+    public SessionRegistry getSessions() {
+        return sessions;
+    }
+    
+    /**
+     * Get the grid of online players used to find ability targets.
+     *
+     * @return The player grid
+     */
+    public PlayerGrid getPlayerGrid() {
+        return playerGrid;
+    }
+    
+    /**
+     * Get the executor that runs ability casts.
+     *
+     * @return The ability executor
+     */
+    public AbilityExecutor getAbilityExecutor() {
+        return abilityExecutor;
+    }
+    
+    /**
+     * Get the governor deciding how much cosmetic output abilities produce.
+     *
+     * @return The quality governor
+     */
+    public QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+    
+    /**
+     * Get the reconciler that keeps players' lasting class effects up to date.
+     *
+     * @return The effect reconciler
+     */
+    public EffectReconciler getEffectReconciler() {
+        return effectReconciler;
+    }
+    
+    /**
+     * Take the lasting class effects from every online player, such as when the plugin
+     * is disabled. Does nothing on Folia, where players can't be changed from here; the
+     * effects are not saved with players either way.
+     */
+    public void clearAllEffects() {
+        if (scheduler.isFolia()) {
+            return;
+        }
+        for (PlayerSession session : sessions.getAll()) {
+            effectReconciler.clear(session);
+        }
+    }
+    
+    /**
+     * Get the queue joining players wait in to have their class effects applied.
+     *
+     * @return The join queue
+     */
+    public JoinQueue getJoinQueue() {
+        return joinQueue;
+    }
+    
+    /**
+     * Get the renderer abilities draw their particle effects with.
+     *
+     * @return The particle renderer
+     */
+    public ParticleRenderer getParticleRenderer() {
+        return particleRenderer;
+    }
+    
+    /**
+     * Get the cooldown service.
+     *
+     * @return The cooldown service
+     */
+    public CooldownService getCooldownService() {
+        return cooldownService;
+    }
+    
     /**
      * Get all available classes.
+     * Safe to call from any thread.
      *
      * @return A list of all available classes
      */
     public List<PlayerClass> getAvailableClasses() {
-        return new ArrayList<>(availableClasses);
+        return classRegistry.getAll();
     }
     
     /**
-     * Perform the primary ability for a player's class.
+     * Queue one of the abilities of a player's class. The cast runs at the next tick
+     * through the {@link AbilityExecutor}.
      *
-     * @param player The player
-     * @return True if the ability was used successfully, false otherwise
+     * @param session The player's session
+     * @param ability The ability slot
+     * @return True if the cast was queued, false if the player has no class or already has this cast queued
      */
-    public boolean performPrimaryAbility(Player player) {
-        PlayerClass playerClass = getPlayerClass(player.getUniqueId());
-        if (playerClass != null) {
-            // Check if player is in a guild for potential bonuses
-            if (guildIntegration != null && guildIntegration.isEnabled() && guildIntegration.isPlayerInGuild(player)) {
-                // Apply guild-specific ability bonuses
-                if (playerClass.getTypeName().equals("healer")) {
-                    player.sendMessage(ChatColor.GOLD + "[Guild Bonus] " + ChatColor.GREEN + "Your healing abilities are enhanced by your guild membership!");
-                } else if (playerClass.getTypeName().equals("orc")) {
-                    player.sendMessage(ChatColor.GOLD + "[Guild Bonus] " + ChatColor.GREEN + "Your strength abilities are enhanced by your guild membership!");
-                }
-            }
-            return playerClass.performPrimaryAbility(player);
-        } else {
-            player.sendMessage(ChatColor.RED + "You don't have a class!");
+    public boolean queueAbility(PlayerSession session, int ability) {
+        if (session.getPlayerClass() == null) {
+            session.getPlayer().sendMessage(ChatColor.RED + "You don't have a class!");
             return false;
         }
+        return abilityExecutor.submit(session, ability);
     }
     
     /**
-     * Perform the secondary ability for a player's class.
+     * Perform one of the abilities of a player's class straight away.
+     * Listeners and commands should use {@link #queueAbility(PlayerSession, int)} instead.
      *
-     * @param player The player
+     * @param session The player's session
+     * @param ability The ability slot
      * @return True if the ability was used successfully, false otherwise
      */
-    public boolean performSecondaryAbility(Player player) {
-        PlayerClass playerClass = getPlayerClass(player.getUniqueId());
+    public boolean performAbility(PlayerSession session, int ability) {
+        Player player = session.getPlayer();
+        PlayerClass playerClass = session.getPlayerClass();
         if (playerClass != null) {
             // Check if player is in a guild for potential bonuses
-            if (guildIntegration != null && guildIntegration.isEnabled() && guildIntegration.isPlayerInGuild(player)) {
+            if (qualityGovernor.getTier() == QualityGovernor.Tier.FULL
+                    && guildIntegration != null && guildIntegration.isEnabled() && guildIntegration.isPlayerInGuild(session)) {
                 // Apply guild-specific ability bonuses
-                if (playerClass.getTypeName().equals("healer")) {
-                    player.sendMessage(ChatColor.GOLD + "[Guild Bonus] " + ChatColor.GREEN + "Your healing aura is enhanced by your guild membership!");
-                } else if (playerClass.getTypeName().equals("orc")) {
-                    player.sendMessage(ChatColor.GOLD + "[Guild Bonus] " + ChatColor.GREEN + "Your ground slam is enhanced by your guild membership!");
+                String bonusMessage = playerClass.getGuildAbilityBonusMessage(ability);
+                if (bonusMessage != null) {
+                    player.sendMessage(ChatColor.GOLD + "[Guild Bonus] " + ChatColor.GREEN + bonusMessage);
                 }
             }
-            return playerClass.performSecondaryAbility(player);
+            boolean used = ability == PlayerClass.PRIMARY_ABILITY
+                    ? playerClass.performPrimaryAbility(session)
+                    : playerClass.performSecondaryAbility(session);
+            if (used) {
+                session.recordAbilityUse(ability);
+            }
+            return used;
         } else {
             player.sendMessage(ChatColor.RED + "You don't have a class!");
             return false;
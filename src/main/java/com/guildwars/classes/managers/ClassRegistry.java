@@ -0,0 +1,107 @@
+package com.guildwars.classes.managers;
+
+import com.guildwars.classes.model.PlayerClass;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registry of the available player classes.
+ * <p>
+ * Each class gets a dense ordinal in registration order, which is what the player index
+ * stores, so resolving a player's class is an array read. Classes are also indexed by
+ * their ID, normalized to lower case once at registration.
+ * <p>
+ * Registration replaces the tables as a whole, so lookups are safe from any thread and
+ * never lock. Other plugins can register their own classes through
+ * {@link ClassManager#registerClass(PlayerClass)}.
+ */
+public class ClassRegistry {
+
+    /**
+     * The most classes the player index can hold.
+     */
+    public static final int MAX_CLASSES = PlayerClassIndex.MAX_ORDINAL + 1;
+
+    private volatile PlayerClass[] byOrdinal = new PlayerClass[0];
+    private volatile Map<String, PlayerClass> byId = Collections.emptyMap();
+
+    /**
+     * Register a class and assign it the next ordinal.
+     *
+     * @param playerClass The class to register
+     * @param services The services the class's abilities use
+     * @return The class's ordinal
+     * @throws IllegalArgumentException If a class with the same ID is already registered or the registry is full
+     */
+    public synchronized int register(PlayerClass playerClass, ClassServices services) {
+        String key = normalize(playerClass.getId());
+        if (byId.containsKey(key)) {
+            throw new IllegalArgumentException("A class with ID " + playerClass.getId() + " is already registered");
+        }
+        if (byOrdinal.length >= MAX_CLASSES) {
+            throw new IllegalArgumentException("Cannot register more than " + MAX_CLASSES + " classes");
+        }
+
+        int ordinal = byOrdinal.length;
+        playerClass.onRegister(ordinal, services);
+
+        PlayerClass[] classes = Arrays.copyOf(byOrdinal, ordinal + 1);
+        classes[ordinal] = playerClass;
+
+        Map<String, PlayerClass> ids = new HashMap<>(byId);
+        ids.put(key, playerClass);
+
+        // Publish the ID table first so a class is never reachable by ordinal but not by ID
+        byId = ids;
+        byOrdinal = classes;
+        return ordinal;
+    }
+
+    /**
+     * Get a class by its ordinal.
+     *
+     * @param ordinal The class ordinal
+     * @return The class, or null if no class has that ordinal
+     */
+    public PlayerClass get(int ordinal) {
+        PlayerClass[] classes = byOrdinal;
+        return ordinal >= 0 && ordinal < classes.length ? classes[ordinal] : null;
+    }
+
+    /**
+     * Get a class by its ID, ignoring case.
+     *
+     * @param classId The ID of the class
+     * @return The class, or null if not found
+     */
+    public PlayerClass get(String classId) {
+        return classId == null ? null : byId.get(normalize(classId));
+    }
+
+    /**
+     * Get all registered classes in ordinal order.
+     *
+     * @return An unmodifiable list of the classes
+     */
+    public List<PlayerClass> getAll() {
+        return Collections.unmodifiableList(Arrays.asList(byOrdinal));
+    }
+
+    /**
+     * Get the number of registered classes.
+     *
+     * @return The class count
+     */
+    public int size() {
+        return byOrdinal.length;
+    }
+
+    private static String normalize(String classId) {
+        return classId.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,22 @@
+package com.guildwars.classes.managers;
+
+import com.guildwars.classes.integration.GuildIntegration;
+import com.guildwars.classes.particles.ParticleRenderer;
+import com.guildwars.classes.scheduler.TaskScheduler;
+
+/**
+ * The services a class is given when it is registered, for its abilities to use.
+ *
+ * @param cooldownService The service tracking ability cooldowns
+ * @param playerGrid The grid abilities find their targets in
+ * @param particleRenderer The renderer abilities draw their particle effects with
+ * @param qualityGovernor The governor deciding how much cosmetic output abilities produce
+ * @param abilityExecutor The executor that runs multi-stage ability effects
+ * @param scheduler The scheduler that runs effects on the thread owning each target
+ * @param sessions The sessions of online players
+ * @param guildIntegration The source of guild relations between casters and targets
+ */
+public record ClassServices(CooldownService cooldownService, PlayerGrid playerGrid, ParticleRenderer particleRenderer,
+                            QualityGovernor qualityGovernor, AbilityExecutor abilityExecutor, TaskScheduler scheduler,
+                            SessionRegistry sessions, GuildIntegration guildIntegration) {
+}
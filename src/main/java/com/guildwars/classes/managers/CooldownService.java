@@ -0,0 +1,424 @@
+package com.guildwars.classes.managers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tracks ability cooldowns for all players, measured in server ticks.
+ * <p>
+ * Each player with an active cooldown holds a slot, and each (slot, ability) pair is one
+ * timer. Timers sit in a hierarchical timing wheel: 256 one-tick buckets, then three levels
+ * of 64 buckets that each cover 64 times the span of a bucket below. Every tick only the
+ * current bucket is visited, and the coarser buckets are cascaded down as their time comes,
+ * so the cost per tick does not depend on how many cooldowns are running. Expired timers are
+ * reclaimed by the wheel, and a player's slot is freed once their last cooldown ends.
+ * <p>
+ * Cooldowns are not tied to the player being online, so logging out does not reset them.
+ * Online players pin their slot through their {@link PlayerSession}, which then reads and
+ * writes cooldowns by slot without hashing the UUID. Slots are found by UUID through a
+ * {@link PlayerSlotMap}, and each slot's owner is kept as the two halves of their UUID,
+ * so a player holding a slot costs no objects. All methods are synchronized;
+ * {@link #tick()} is called once per server tick.
+ */
+public class CooldownService {
+
+    /**
+     * Ability slots tracked per player.
+     */
+    public static final int ABILITY_SLOTS = 2;
+
+    private static final int LEVEL0_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVELS = 4;
+    private static final int LEVEL0_BUCKETS = 1 << LEVEL0_BITS;
+    private static final int LEVEL_BUCKETS = 1 << LEVEL_BITS;
+
+    /**
+     * The longest cooldown the wheel can hold, a little over 38 days.
+     */
+    public static final int MAX_TICKS = (1 << (LEVEL0_BITS + LEVEL_BITS * (LEVELS - 1))) - 1;
+
+    private static final int NONE = -1;
+    private static final int INITIAL_SLOTS = 64;
+
+    private final ExpiryListener expiryListener;
+    private final PlayerSlotMap slots = new PlayerSlotMap();
+    private final int[] bucketHeads = new int[LEVEL0_BUCKETS + (LEVELS - 1) * LEVEL_BUCKETS];
+
+    private long[] slotOwnerMostSigBits;
+    private long[] slotOwnerLeastSigBits;
+    private int[] slotActiveTimers;
+    private boolean[] slotPinned;
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private int slotCount;
+
+    private long[] deadlines;
+    private int[] timerNext;
+    private int[] timerPrev;
+    private int[] timerBucket;
+    private int activeTimers;
+
+    private long currentTick;
+
+    private final List<UUID> expiredPlayers = new ArrayList<>();
+    private int[] expiredAbilities = new int[16];
+
+    /**
+     * Listener told when a cooldown runs out.
+     */
+    @FunctionalInterface
+    public interface ExpiryListener {
+
+        /**
+         * Called on the ticking thread when an ability comes off cooldown.
+         *
+         * @param playerId The UUID of the player
+         * @param ability The ability slot
+         */
+        void onCooldownExpired(UUID playerId, int ability);
+    }
+
+    /**
+     * Creates a new cooldown service.
+     *
+     * @param expiryListener Told when cooldowns run out, may be null
+     */
+    public CooldownService(ExpiryListener expiryListener) {
+        this.expiryListener = expiryListener;
+        Arrays.fill(bucketHeads, NONE);
+        allocate(INITIAL_SLOTS);
+    }
+
+    /**
+     * Put an ability on cooldown, replacing any cooldown it already has.
+     *
+     * @param playerId The UUID of the player
+     * @param ability The ability slot
+     * @param ticks The cooldown length in ticks; 0 or less clears the cooldown
+     */
+    public synchronized void setCooldown(UUID playerId, int ability, int ticks) {
+        if (ticks <= 0) {
+            clearCooldown(playerId, ability);
+            return;
+        }
+
+        setCooldown(acquireSlot(playerId), ability, ticks);
+    }
+
+    /**
+     * Put an ability on cooldown for a pinned slot, replacing any cooldown it already has.
+     *
+     * @param slot The slot returned by {@link #pin(UUID)}
+     * @param ability The ability slot
+     * @param ticks The cooldown length in ticks; 0 or less clears the cooldown
+     */
+    public synchronized void setCooldown(int slot, int ability, int ticks) {
+        int timer = slot * ABILITY_SLOTS + ability;
+        if (ticks <= 0) {
+            if (deadlines[timer] != 0) {
+                unlink(timer);
+                finishTimer(timer);
+            }
+            return;
+        }
+
+        if (deadlines[timer] != 0) {
+            unlink(timer);
+        } else {
+            slotActiveTimers[slot]++;
+            activeTimers++;
+        }
+
+        deadlines[timer] = currentTick + Math.min(ticks, MAX_TICKS);
+        link(timer);
+    }
+
+    /**
+     * Take an ability off cooldown early.
+     *
+     * @param playerId The UUID of the player
+     * @param ability The ability slot
+     */
+    public synchronized void clearCooldown(UUID playerId, int ability) {
+        int slot = slots.get(playerId);
+        if (slot != PlayerSlotMap.ABSENT) {
+            setCooldown(slot, ability, 0);
+        }
+    }
+
+    /**
+     * Get the ticks left before an ability comes off cooldown.
+     *
+     * @param playerId The UUID of the player
+     * @param ability The ability slot
+     * @return The remaining ticks, or 0 if the ability is ready
+     */
+    public synchronized int getRemainingTicks(UUID playerId, int ability) {
+        int slot = slots.get(playerId);
+        return slot == PlayerSlotMap.ABSENT ? 0 : getRemainingTicks(slot, ability);
+    }
+
+    /**
+     * Get the ticks left before an ability comes off cooldown for a pinned slot.
+     *
+     * @param slot The slot returned by {@link #pin(UUID)}
+     * @param ability The ability slot
+     * @return The remaining ticks, or 0 if the ability is ready
+     */
+    public synchronized int getRemainingTicks(int slot, int ability) {
+        long deadline = deadlines[slot * ABILITY_SLOTS + ability];
+        return deadline == 0 ? 0 : (int) Math.max(0, deadline - currentTick);
+    }
+
+    /**
+     * Keep a player's slot allocated even while none of their cooldowns are running,
+     * so it can be used directly. Called when the player's session opens.
+     *
+     * @param playerId The UUID of the player
+     * @return The player's slot
+     */
+    public synchronized int pin(UUID playerId) {
+        int slot = acquireSlot(playerId);
+        slotPinned[slot] = true;
+        return slot;
+    }
+
+    /**
+     * Release a pinned slot. It is freed now if no cooldowns are running, otherwise when
+     * the last one ends. Called when the player's session closes.
+     *
+     * @param slot The slot returned by {@link #pin(UUID)}
+     */
+    public synchronized void unpin(int slot) {
+        slotPinned[slot] = false;
+        if (slotActiveTimers[slot] == 0) {
+            releaseSlot(slot);
+        }
+    }
+
+    /**
+     * Advance the wheel by one tick and expire the cooldowns that are due.
+     */
+    public void tick() {
+        int expired;
+        synchronized (this) {
+            currentTick++;
+            expired = advance();
+        }
+
+        // Notify outside the lock so listeners can use the service freely
+        if (expiryListener != null) {
+            for (int i = 0; i < expired; i++) {
+                expiryListener.onCooldownExpired(expiredPlayers.get(i), expiredAbilities[i]);
+            }
+        }
+        expiredPlayers.clear();
+    }
+
+    /**
+     * Get the number of cooldowns currently running.
+     *
+     * @return The active cooldown count
+     */
+    public synchronized int getActiveCount() {
+        return activeTimers;
+    }
+
+    /**
+     * Get the number of players holding a slot, either online or with a cooldown running.
+     *
+     * @return The player count
+     */
+    public synchronized int getPlayerCount() {
+        return slots.size();
+    }
+
+    /**
+     * Cascade the coarser buckets that are due and expire the current one-tick bucket.
+     *
+     * @return The number of expired timers recorded for notification
+     */
+    private int advance() {
+        // Cascade from the coarsest level down so entries can fall through several levels
+        for (int level = LEVELS - 1; level >= 1; level--) {
+            int shift = LEVEL0_BITS + LEVEL_BITS * (level - 1);
+            if ((currentTick & ((1L << shift) - 1)) == 0) {
+                int bucket = LEVEL0_BUCKETS + (level - 1) * LEVEL_BUCKETS + (int) ((currentTick >>> shift) & (LEVEL_BUCKETS - 1));
+                cascade(bucket);
+            }
+        }
+
+        int bucket = (int) (currentTick & (LEVEL0_BUCKETS - 1));
+        int timer = bucketHeads[bucket];
+        bucketHeads[bucket] = NONE;
+
+        int expired = 0;
+        while (timer != NONE) {
+            int next = timerNext[timer];
+            timerBucket[timer] = NONE;
+
+            if (deadlines[timer] > currentTick) {
+                // Not due yet; can only happen if the clock was behind when it was linked
+                link(timer);
+            } else {
+                if (expired == expiredAbilities.length) {
+                    expiredAbilities = Arrays.copyOf(expiredAbilities, expired * 2);
+                }
+                int slot = timer / ABILITY_SLOTS;
+                expiredPlayers.add(new UUID(slotOwnerMostSigBits[slot], slotOwnerLeastSigBits[slot]));
+                expiredAbilities[expired++] = timer % ABILITY_SLOTS;
+                finishTimer(timer);
+            }
+            timer = next;
+        }
+        return expired;
+    }
+
+    /**
+     * Re-link every timer in a bucket, moving it to a finer level.
+     *
+     * @param bucket The bucket to empty
+     */
+    private void cascade(int bucket) {
+        int timer = bucketHeads[bucket];
+        bucketHeads[bucket] = NONE;
+
+        while (timer != NONE) {
+            int next = timerNext[timer];
+            timerBucket[timer] = NONE;
+            link(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Clear a timer that has been unlinked and free its slot if it was the last one.
+     *
+     * @param timer The timer
+     */
+    private void finishTimer(int timer) {
+        int slot = timer / ABILITY_SLOTS;
+        deadlines[timer] = 0;
+        activeTimers--;
+
+        if (--slotActiveTimers[slot] == 0 && !slotPinned[slot]) {
+            releaseSlot(slot);
+        }
+    }
+
+    /**
+     * Return a slot to the free list.
+     *
+     * @param slot The slot
+     */
+    private void releaseSlot(int slot) {
+        slots.remove(slotOwnerMostSigBits[slot], slotOwnerLeastSigBits[slot]);
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    /**
+     * Add a timer to the bucket its deadline falls in.
+     *
+     * @param timer The timer
+     */
+    private void link(int timer) {
+        long deadline = deadlines[timer];
+        long delta = deadline - currentTick;
+
+        int bucket;
+        if (delta < LEVEL0_BUCKETS) {
+            bucket = (int) (deadline & (LEVEL0_BUCKETS - 1));
+        } else {
+            int level = 1;
+            while (level < LEVELS - 1 && delta >= 1L << (LEVEL0_BITS + LEVEL_BITS * level)) {
+                level++;
+            }
+            int shift = LEVEL0_BITS + LEVEL_BITS * (level - 1);
+            bucket = LEVEL0_BUCKETS + (level - 1) * LEVEL_BUCKETS + (int) ((deadline >>> shift) & (LEVEL_BUCKETS - 1));
+        }
+
+        int head = bucketHeads[bucket];
+        timerNext[timer] = head;
+        timerPrev[timer] = NONE;
+        if (head != NONE) {
+            timerPrev[head] = timer;
+        }
+        bucketHeads[bucket] = timer;
+        timerBucket[timer] = bucket;
+    }
+
+    /**
+     * Remove a timer from its bucket.
+     *
+     * @param timer The timer
+     */
+    private void unlink(int timer) {
+        int prev = timerPrev[timer];
+        int next = timerNext[timer];
+
+        if (prev != NONE) {
+            timerNext[prev] = next;
+        } else {
+            bucketHeads[timerBucket[timer]] = next;
+        }
+        if (next != NONE) {
+            timerPrev[next] = prev;
+        }
+        timerBucket[timer] = NONE;
+    }
+
+    /**
+     * Get a player's slot, assigning a free one if they have none.
+     *
+     * @param playerId The UUID of the player
+     * @return The slot
+     */
+    private int acquireSlot(UUID playerId) {
+        long msb = playerId.getMostSignificantBits();
+        long lsb = playerId.getLeastSignificantBits();
+        int existing = slots.get(msb, lsb);
+        if (existing != PlayerSlotMap.ABSENT) {
+            return existing;
+        }
+
+        if (freeSlotCount == 0) {
+            allocate(slotCount * 2);
+        }
+
+        int slot = freeSlots[--freeSlotCount];
+        slotOwnerMostSigBits[slot] = msb;
+        slotOwnerLeastSigBits[slot] = lsb;
+        slots.put(msb, lsb, slot);
+        return slot;
+    }
+
+    /**
+     * Grow the slot and timer arrays, adding the new slots to the free list.
+     *
+     * @param newSlotCount The new number of slots
+     */
+    private void allocate(int newSlotCount) {
+        int oldSlotCount = slotCount;
+        int timers = newSlotCount * ABILITY_SLOTS;
+
+        slotOwnerMostSigBits = slotOwnerMostSigBits == null ? new long[newSlotCount] : Arrays.copyOf(slotOwnerMostSigBits, newSlotCount);
+        slotOwnerLeastSigBits = slotOwnerLeastSigBits == null ? new long[newSlotCount] : Arrays.copyOf(slotOwnerLeastSigBits, newSlotCount);
+        slotActiveTimers = slotActiveTimers == null ? new int[newSlotCount] : Arrays.copyOf(slotActiveTimers, newSlotCount);
+        slotPinned = slotPinned == null ? new boolean[newSlotCount] : Arrays.copyOf(slotPinned, newSlotCount);
+        freeSlots = freeSlots == null ? new int[newSlotCount] : Arrays.copyOf(freeSlots, newSlotCount);
+        deadlines = deadlines == null ? new long[timers] : Arrays.copyOf(deadlines, timers);
+        timerNext = timerNext == null ? new int[timers] : Arrays.copyOf(timerNext, timers);
+        timerPrev = timerPrev == null ? new int[timers] : Arrays.copyOf(timerPrev, timers);
+        timerBucket = timerBucket == null ? new int[timers] : Arrays.copyOf(timerBucket, timers);
+        Arrays.fill(timerBucket, oldSlotCount * ABILITY_SLOTS, timers, NONE);
+
+        // Hand out low slots first
+        for (int slot = newSlotCount - 1; slot >= oldSlotCount; slot--) {
+            freeSlots[freeSlotCount++] = slot;
+        }
+        slotCount = newSlotCount;
+    }
+}
@@ -0,0 +1,264 @@
+package com.guildwars.classes.managers;
+
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.config.ConfigManager;
+import com.guildwars.classes.integration.GuildIntegration;
+import com.guildwars.classes.model.PassiveModifier;
+import com.guildwars.classes.model.PassiveModifiers;
+import com.guildwars.classes.model.PlayerClass;
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Player;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps each player's lasting class effects in line with what they should have.
+ * <p>
+ * The effects a player should have follow from their class and whether they get guild
+ * bonuses. They are compared with the effects last applied to the player, and only the
+ * modifiers that differ are added or taken away, so running the reconciler again when
+ * nothing changed costs a single comparison. Players with the same class and guild bonus
+ * tier share one precomputed effect set, rebuilt when the config is reloaded.
+ * <p>
+ * Modifiers can also disappear without the reconciler knowing, when a command or another
+ * plugin removes them or the player respawns. {@link #verify(PlayerSession)} checks the
+ * player's attributes for the effects they should have and puts back any that are missing.
+ * <p>
+ * Timed ability buffs, such as Orc Rage, are potion effects that run out on their own
+ * and are never touched here; the lasting effects are attribute modifiers, so the two
+ * can no longer overwrite each other.
+ */
+public class EffectReconciler {
+
+    /**
+     * Guild bonus tier of players outside a guild, or when guild bonuses are off.
+     */
+    public static final int NO_GUILD_BONUS = 0;
+
+    /**
+     * Guild bonus tier of guild members.
+     */
+    public static final int GUILD_BONUS = 1;
+
+    /**
+     * The lasting effects of one class and guild bonus tier.
+     */
+    public static final class EffectSet {
+
+        /**
+         * The effects of a player with no class.
+         */
+        static final EffectSet NONE = new EffectSet(-1, NO_GUILD_BONUS, false, Map.of());
+
+        private final int classOrdinal;
+        private final int guildTier;
+        private final boolean guildBonuses;
+        private final Map<NamespacedKey, PassiveModifier> modifiers;
+
+        private EffectSet(int classOrdinal, int guildTier, boolean guildBonuses, Map<NamespacedKey, PassiveModifier> modifiers) {
+            this.classOrdinal = classOrdinal;
+            this.guildTier = guildTier;
+            this.guildBonuses = guildBonuses;
+            this.modifiers = modifiers;
+        }
+
+        /**
+         * Check whether this set gives guild bonuses that another set lacks.
+         *
+         * @param previous The set applied before
+         * @return True if guild bonuses were gained
+         */
+        private boolean gainsGuildBonuses(EffectSet previous) {
+            return guildBonuses && (previous.classOrdinal != classOrdinal || previous.guildTier < guildTier);
+        }
+    }
+
+    /**
+     * The effect sets built from one config.
+     *
+     * @param config The config the sets were built from
+     * @param sets The sets, by class ordinal and guild bonus tier
+     */
+    private record EffectSets(ClassConfig config, Map<Integer, EffectSet> sets) {
+    }
+
+    private final ConfigManager configManager;
+    private final GuildIntegration guildIntegration;
+    private final LongAdder reconciled = new LongAdder();
+    private final LongAdder modifiersChanged = new LongAdder();
+    private final LongAdder modifiersRestored = new LongAdder();
+    private volatile EffectSets effectSets;
+
+    /**
+     * Creates a new effect reconciler.
+     *
+     * @param configManager The source of the class and guild bonus settings
+     * @param guildIntegration The guild integration, used to check guild membership
+     */
+    public EffectReconciler(ConfigManager configManager, GuildIntegration guildIntegration) {
+        this.configManager = configManager;
+        this.guildIntegration = guildIntegration;
+    }
+
+    /**
+     * Bring a player's lasting effects in line with their class and guild membership.
+     * Must be called on the player's thread.
+     *
+     * @param session The player's session
+     */
+    public void reconcile(PlayerSession session) {
+        PlayerClass playerClass = session.getPlayerClass();
+        EffectSet desired = playerClass != null ? getEffectSet(playerClass, getGuildTier(session)) : EffectSet.NONE;
+        apply(session, desired);
+
+        if (playerClass != null && desired.gainsGuildBonuses(session.getAppliedEffects())) {
+            playerClass.onGuildBonusesApplied(session.getPlayer());
+        }
+        session.setAppliedEffects(desired);
+    }
+
+    /**
+     * Put back the applied modifiers a player no longer has. Must be called on the player's thread.
+     *
+     * @param session The player's session
+     */
+    public void verify(PlayerSession session) {
+        Player player = session.getPlayer();
+        for (PassiveModifier modifier : session.getAppliedEffects().modifiers.values()) {
+            if (!modifier.isAppliedTo(player)) {
+                modifier.apply(player);
+                modifiersRestored.increment();
+            }
+        }
+    }
+
+    /**
+     * Take all lasting effects from a player, such as when the plugin is disabled.
+     * Must be called on the player's thread.
+     *
+     * @param session The player's session
+     */
+    public void clear(PlayerSession session) {
+        apply(session, EffectSet.NONE);
+        session.setAppliedEffects(EffectSet.NONE);
+    }
+
+    /**
+     * Get the number of times a player's effects had to change since the server started.
+     *
+     * @return The reconcile count
+     */
+    public long getReconciled() {
+        return reconciled.sum();
+    }
+
+    /**
+     * Get the number of modifiers added or taken away since the server started.
+     *
+     * @return The modifier change count
+     */
+    public long getModifiersChanged() {
+        return modifiersChanged.sum();
+    }
+
+    /**
+     * Get the number of modifiers put back after a player lost them since the server started.
+     *
+     * @return The restored modifier count
+     */
+    public long getModifiersRestored() {
+        return modifiersRestored.sum();
+    }
+
+    /**
+     * Add and take away the modifiers that differ between a player's applied and desired effects.
+     *
+     * @param session The player's session
+     * @param desired The effects the player should have
+     */
+    private void apply(PlayerSession session, EffectSet desired) {
+        EffectSet applied = session.getAppliedEffects();
+        if (desired == applied) {
+            return;
+        }
+
+        Player player = session.getPlayer();
+        int changes = 0;
+        for (PassiveModifier modifier : applied.modifiers.values()) {
+            if (!desired.modifiers.containsKey(modifier.key())) {
+                modifier.remove(player);
+                changes++;
+            }
+        }
+        for (PassiveModifier modifier : desired.modifiers.values()) {
+            if (!modifier.equals(applied.modifiers.get(modifier.key()))) {
+                modifier.apply(player);
+                changes++;
+            }
+        }
+
+        // Don't leave the player above a maximum health that was just lowered
+        if (changes > 0) {
+            PassiveModifiers.clampHealth(player);
+        }
+        reconciled.increment();
+        modifiersChanged.add(changes);
+    }
+
+    /**
+     * Get the guild bonus tier a player is in.
+     *
+     * @param session The player's session
+     * @return The tier
+     */
+    private int getGuildTier(PlayerSession session) {
+        if (guildIntegration == null || !guildIntegration.isEnabled() || !guildIntegration.areGuildBonusesEnabled()) {
+            return NO_GUILD_BONUS;
+        }
+        return guildIntegration.isPlayerInGuild(session) ? GUILD_BONUS : NO_GUILD_BONUS;
+    }
+
+    /**
+     * Get the shared effect set of a class and guild bonus tier, building it if needed.
+     *
+     * @param playerClass The class
+     * @param guildTier The guild bonus tier
+     * @return The effect set
+     */
+    private EffectSet getEffectSet(PlayerClass playerClass, int guildTier) {
+        ClassConfig config = configManager.get();
+        EffectSets current = effectSets;
+        if (current == null || current.config() != config) {
+            current = new EffectSets(config, new ConcurrentHashMap<>());
+            effectSets = current;
+        }
+
+        int key = playerClass.getOrdinal() * 2 + guildTier;
+        return current.sets().computeIfAbsent(key, ignored -> buildEffectSet(playerClass, guildTier, config));
+    }
+
+    /**
+     * Build the effect set of a class and guild bonus tier.
+     *
+     * @param playerClass The class
+     * @param guildTier The guild bonus tier
+     * @param config The config to read the guild bonuses from
+     * @return The effect set
+     */
+    private static EffectSet buildEffectSet(PlayerClass playerClass, int guildTier, ClassConfig config) {
+        Map<NamespacedKey, PassiveModifier> modifiers = new LinkedHashMap<>();
+        for (PassiveModifier modifier : playerClass.getPassiveModifiers()) {
+            modifiers.put(modifier.key(), modifier);
+        }
+        List<PassiveModifier> guildBonuses = guildTier > NO_GUILD_BONUS ? playerClass.getGuildBonusModifiers(config.guildBonuses()) : List.of();
+        for (PassiveModifier modifier : guildBonuses) {
+            modifiers.put(modifier.key(), modifier);
+        }
+        return new EffectSet(playerClass.getOrdinal(), guildTier, !guildBonuses.isEmpty(), Collections.unmodifiableMap(modifiers));
+    }
+}
@@ -0,0 +1,194 @@
+package com.guildwars.classes.managers;
+
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.config.ConfigManager;
+import com.guildwars.classes.scheduler.TaskScheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies class effects to joining players a few at a time, in the order they joined.
+ * <p>
+ * After a restart hundreds of players can join within seconds. Instead of each join
+ * scheduling its own task, joining players are put on one queue that is worked through
+ * every tick until the tick's budget or player limit is reached. Whoever is left waits
+ * for the next tick. Each tick handles at least one player, however small the budget.
+ * How long players waited is recorded, so the limits can be tuned.
+ * <p>
+ * On Folia there is no single tick to budget. The queue still hands out players in join
+ * order, up to the player limit per tick, and each is handled on their own region.
+ */
+public class JoinQueue {
+
+    /**
+     * A queued player.
+     *
+     * @param session The player's session
+     * @param queuedAt When the player was queued, in {@link System#nanoTime()} units
+     */
+    private record Entry(PlayerSession session, long queuedAt) {
+    }
+
+    private final ConfigManager configManager;
+    private final TaskScheduler scheduler;
+    private final Logger logger;
+    private final Consumer<PlayerSession> joinHandler;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private volatile long handled;
+    private volatile long totalWaitNanos;
+    private volatile long maxWaitNanos;
+    private volatile int peakQueued;
+    private volatile int lastTickHandled;
+
+    /**
+     * Creates a new join queue.
+     *
+     * @param configManager The source of the tick budget and player limit
+     * @param scheduler The scheduler used on Folia
+     * @param logger The logger to report failures to
+     * @param joinHandler Applies class effects to a player when their turn comes
+     */
+    public JoinQueue(ConfigManager configManager, TaskScheduler scheduler, Logger logger, Consumer<PlayerSession> joinHandler) {
+        this.configManager = configManager;
+        this.scheduler = scheduler;
+        this.logger = logger;
+        this.joinHandler = joinHandler;
+    }
+
+    /**
+     * Queue a player who joined. Safe to call from any thread.
+     *
+     * @param session The player's session
+     */
+    public void submit(PlayerSession session) {
+        queue.add(new Entry(session, System.nanoTime()));
+        int size = queued.incrementAndGet();
+        if (size > peakQueued) {
+            peakQueued = size;
+        }
+    }
+
+    /**
+     * Handle queued players until the tick's budget or player limit is reached. Called
+     * once per tick on the main thread, or the global region on Folia.
+     */
+    public synchronized void tick() {
+        if (queue.isEmpty()) {
+            lastTickHandled = 0;
+            return;
+        }
+
+        ClassConfig.Joins settings = configManager.get().joins();
+        long start = System.nanoTime();
+        long deadline = start + (long) (settings.tickBudgetMillis() * 1_000_000);
+        int count = 0;
+
+        Entry entry;
+        while (count < settings.maxPerTick() && (entry = queue.poll()) != null) {
+            queued.decrementAndGet();
+            recordWait(start - entry.queuedAt());
+            count++;
+
+            PlayerSession session = entry.session();
+            if (scheduler.isFolia()) {
+                // The player's region applies the effects; only the order and rate are kept here
+                scheduler.runForEntity(session.getPlayer(), () -> handle(session));
+                continue;
+            }
+
+            handle(session);
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        lastTickHandled = count;
+    }
+
+    /**
+     * Get the number of players waiting.
+     *
+     * @return The queue length
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Get the longest the queue has been since the server started.
+     *
+     * @return The peak queue length
+     */
+    public int getPeakQueued() {
+        return peakQueued;
+    }
+
+    /**
+     * Get the number of players handled since the server started.
+     *
+     * @return The handled count
+     */
+    public long getHandled() {
+        return handled;
+    }
+
+    /**
+     * Get the number of players handled in the last tick.
+     *
+     * @return The handled count
+     */
+    public int getLastTickHandled() {
+        return lastTickHandled;
+    }
+
+    /**
+     * Get how long players waited in the queue on average.
+     *
+     * @return The average wait in milliseconds, or 0 if no player was handled yet
+     */
+    public double getAverageWaitMillis() {
+        long count = handled;
+        return count > 0 ? totalWaitNanos / (double) count / 1_000_000 : 0;
+    }
+
+    /**
+     * Get the longest a player waited in the queue.
+     *
+     * @return The longest wait in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1_000_000.0;
+    }
+
+    /**
+     * Apply class effects to a player, reporting any failure so it can't stop the queue.
+     *
+     * @param session The player's session
+     */
+    private void handle(PlayerSession session) {
+        try {
+            joinHandler.accept(session);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Failed to apply class effects to " + session.getPlayer().getName(), e);
+        }
+    }
+
+    /**
+     * Record how long a player waited. Only called under the queue's lock.
+     *
+     * @param waitNanos The wait in nanoseconds
+     */
+    private void recordWait(long waitNanos) {
+        handled++;
+        totalWaitNanos += waitNanos;
+        if (waitNanos > maxWaitNanos) {
+            maxWaitNanos = waitNanos;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.guildwars.classes.managers;
+
+import java.lang.invoke.VarHandle;
+import java.util.UUID;
+
+/**
+ * Open-addressing hash table from player UUIDs to their class ordinal.
+ * <p>
+ * Keys are stored as the UUID's two {@code long} halves and the class as a single byte,
+ * so an entry costs 17 bytes of array space instead of a boxed UUID and a
+ * {@code ConcurrentHashMap} node: about 23-45 bytes per player depending on how full the
+ * table is, against about 72 for a {@code ConcurrentHashMap<UUID, PlayerClass>}
+ * (measured by {@code PlayerClassIndexMemoryReport}: 1M players 36 MB vs 72 MB). The
+ * {@link CooldownService} finds slots through a {@link PlayerSlotMap} laid out the same
+ * way; with two running cooldowns each, 1M players take 146 MB against 208 MB for a map
+ * of classes and a {@code HashMap<UUID, Long>} per ability.
+ * <p>
+ * Writes are serialized on the index. Reads never lock: they run optimistically against a
+ * version counter (a seqlock) and retry if a write happened in between, so they are safe
+ * from any thread.
+ */
+public class PlayerClassIndex {
+
+    /**
+     * Ordinal returned for players who are not in the index or have no class.
+     */
+    public static final int NO_CLASS = -1;
+
+    private static final byte EMPTY = 0;
+    private static final byte PRESENT_WITHOUT_CLASS = 1;
+    private static final int ORDINAL_OFFSET = 2;
+
+    /**
+     * The highest class ordinal that fits in an entry.
+     */
+    public static final int MAX_ORDINAL = 255 - ORDINAL_OFFSET;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile int version;
+    private Table table;
+    private int size;
+
+    /**
+     * Creates a new empty index.
+     */
+    public PlayerClassIndex() {
+        this.table = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * Get a player's class ordinal.
+     *
+     * @param playerId The UUID of the player
+     * @return The class ordinal, or {@link #NO_CLASS}
+     */
+    public int getOrdinal(UUID playerId) {
+        long mostSigBits = playerId.getMostSignificantBits();
+        long leastSigBits = playerId.getLeastSignificantBits();
+
+        while (true) {
+            int stamp = version;
+            if ((stamp & 1) == 0) {
+                Table current = table;
+                int slot = current.find(mostSigBits, leastSigBits);
+                int state = slot < 0 ? EMPTY : current.states[slot];
+
+                VarHandle.loadLoadFence();
+                if (stamp == version) {
+                    return state >= ORDINAL_OFFSET ? state - ORDINAL_OFFSET : NO_CLASS;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Check whether a player has an entry, with or without a class.
+     *
+     * @param playerId The UUID of the player
+     * @return True if the player is in the index
+     */
+    public boolean contains(UUID playerId) {
+        long mostSigBits = playerId.getMostSignificantBits();
+        long leastSigBits = playerId.getLeastSignificantBits();
+
+        while (true) {
+            int stamp = version;
+            if ((stamp & 1) == 0) {
+                boolean found = table.find(mostSigBits, leastSigBits) >= 0;
+
+                VarHandle.loadLoadFence();
+                if (stamp == version) {
+                    return found;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Set a player's class ordinal, adding the player if needed.
+     *
+     * @param playerId The UUID of the player
+     * @param ordinal The class ordinal, or {@link #NO_CLASS} to keep the entry without a class
+     */
+    public synchronized void setOrdinal(UUID playerId, int ordinal) {
+        if (ordinal > MAX_ORDINAL) {
+            throw new IllegalArgumentException("Class ordinal out of range: " + ordinal);
+        }
+
+        beginWrite();
+        try {
+            int slot = findOrInsert(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+            table.states[slot] = ordinal == NO_CLASS ? PRESENT_WITHOUT_CLASS : (byte) (ordinal + ORDINAL_OFFSET);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Remove a player.
+     *
+     * @param playerId The UUID of the player
+     */
+    public synchronized void remove(UUID playerId) {
+        int slot = table.find(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+        if (slot < 0) {
+            return;
+        }
+
+        beginWrite();
+        try {
+            table.removeAt(slot);
+            size--;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Get the number of players in the index.
+     *
+     * @return The entry count
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Find a player's slot, inserting an empty entry if they are not present.
+     * Must be called inside a write.
+     *
+     * @param mostSigBits The high half of the player's UUID
+     * @param leastSigBits The low half of the player's UUID
+     * @return The slot
+     */
+    private int findOrInsert(long mostSigBits, long leastSigBits) {
+        int slot = table.find(mostSigBits, leastSigBits);
+        if (slot >= 0) {
+            return slot;
+        }
+
+        // Keep the load factor at or below 3/4
+        if ((size + 1) * 4 > table.capacity() * 3) {
+            table = table.resize(table.capacity() * 2);
+        }
+
+        size++;
+        return table.insert(mostSigBits, leastSigBits);
+    }
+
+    private void beginWrite() {
+        version++;
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        version++;
+    }
+
+    /**
+     * The arrays backing the index. Replaced as a whole when the index grows.
+     */
+    private static final class Table {
+
+        private final long[] mostSigBits;
+        private final long[] leastSigBits;
+        private final byte[] states;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.mostSigBits = new long[capacity];
+            this.leastSigBits = new long[capacity];
+            this.states = new byte[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return states.length;
+        }
+
+        /**
+         * Find the slot holding a key. Gives up after one pass over the table so a read
+         * racing a write cannot loop forever; the version check discards such reads.
+         *
+         * @return The slot, or -1 if the key is not present
+         */
+        private int find(long msb, long lsb) {
+            int slot = hash(msb, lsb) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (states[slot] == EMPTY) {
+                    return -1;
+                }
+                if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Claim the first empty slot for a key known to be absent.
+         *
+         * @return The slot
+         */
+        private int insert(long msb, long lsb) {
+            int slot = hash(msb, lsb) & mask;
+            while (states[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            mostSigBits[slot] = msb;
+            leastSigBits[slot] = lsb;
+            states[slot] = PRESENT_WITHOUT_CLASS;
+            return slot;
+        }
+
+        /**
+         * Remove the entry at a slot, shifting later entries of the same probe run back
+         * so lookups never need tombstones.
+         */
+        private void removeAt(int slot) {
+            int hole = slot;
+            int next = (hole + 1) & mask;
+
+            while (states[next] != EMPTY) {
+                int home = hash(mostSigBits[next], leastSigBits[next]) & mask;
+
+                // Move the entry into the hole if its home is not between the hole and its slot
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    moveEntry(next, hole);
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+
+            states[hole] = EMPTY;
+        }
+
+        private void moveEntry(int from, int to) {
+            mostSigBits[to] = mostSigBits[from];
+            leastSigBits[to] = leastSigBits[from];
+            states[to] = states[from];
+        }
+
+        /**
+         * Copy every entry into a larger table.
+         */
+        private Table resize(int newCapacity) {
+            Table resized = new Table(newCapacity);
+            for (int slot = 0; slot < states.length; slot++) {
+                if (states[slot] != EMPTY) {
+                    int target = resized.insert(mostSigBits[slot], leastSigBits[slot]);
+                    resized.states[target] = states[slot];
+                }
+            }
+            return resized;
+        }
+
+        private static int hash(long msb, long lsb) {
+            long h = msb ^ lsb;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return (int) h;
+        }
+    }
+}
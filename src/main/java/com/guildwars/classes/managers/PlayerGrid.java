@@ -0,0 +1,239 @@
+package com.guildwars.classes.managers;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.util.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A grid of online players per world, used to find ability targets.
+ * <p>
+ * Each world is split into columns the size of a chunk. Every online player with a
+ * session sits in the column they are standing in, and is moved when they cross into
+ * another one. Looking for players near a point only visits the columns around it, so
+ * the cost does not depend on how many mobs, items or other entities are in the area.
+ * <p>
+ * Query results are written to a buffer that is reused by the next query on the same
+ * thread. Callers must finish with a result before querying again. The grid is shared by
+ * all threads, as players move on different regions on Folia. Each player is only
+ * updated on their own thread, which also records where their hitbox is; queries only
+ * read that snapshot, never the player, so they are safe from any thread. The worlds and
+ * columns are concurrent collections, so no query or update waits for another.
+ */
+public class PlayerGrid {
+
+    private static final int CELL_SHIFT = 4;
+
+    /**
+     * Where a player was when last updated.
+     *
+     * @param worldId The world's UUID
+     * @param cell The key of the column the player is in
+     * @param minX The minimum X of the player's hitbox
+     * @param minY The minimum Y of the player's hitbox
+     * @param minZ The minimum Z of the player's hitbox
+     * @param maxX The maximum X of the player's hitbox
+     * @param maxY The maximum Y of the player's hitbox
+     * @param maxZ The maximum Z of the player's hitbox
+     */
+    record Position(UUID worldId, long cell, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+
+        /**
+         * Check whether the hitbox overlaps a box.
+         *
+         * @param minX The minimum X of the box
+         * @param minY The minimum Y of the box
+         * @param minZ The minimum Z of the box
+         * @param maxX The maximum X of the box
+         * @param maxY The maximum Y of the box
+         * @param maxZ The maximum Z of the box
+         * @return True if they overlap
+         */
+        private boolean overlaps(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+            return this.maxX >= minX && this.minX <= maxX
+                    && this.maxY >= minY && this.minY <= maxY
+                    && this.maxZ >= minZ && this.minZ <= maxZ;
+        }
+    }
+
+    private final Map<UUID, Map<Long, Set<PlayerSession>>> worlds = new ConcurrentHashMap<>();
+    private final ThreadLocal<List<Player>> results = ThreadLocal.withInitial(ArrayList::new);
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Record where a player is, moving them to the column containing the location if they
+     * left their old one. Must be called on the player's thread.
+     *
+     * @param session The player's session
+     * @param location Where the player is, or is about to be
+     */
+    public void update(PlayerSession session, Location location) {
+        World world = location.getWorld();
+        if (world == null) {
+            return;
+        }
+
+        // Move the player's current hitbox to the location
+        Player player = session.getPlayer();
+        Location current = player.getLocation();
+        BoundingBox box = player.getBoundingBox();
+        double offsetX = location.getX() - current.getX();
+        double offsetY = location.getY() - current.getY();
+        double offsetZ = location.getZ() - current.getZ();
+
+        UUID worldId = world.getUID();
+        long cell = cellKey(location.getBlockX() >> CELL_SHIFT, location.getBlockZ() >> CELL_SHIFT);
+        Position previous = session.getGridPosition();
+        session.setGridPosition(new Position(worldId, cell,
+                box.getMinX() + offsetX, box.getMinY() + offsetY, box.getMinZ() + offsetZ,
+                box.getMaxX() + offsetX, box.getMaxY() + offsetY, box.getMaxZ() + offsetZ));
+        if (previous != null && previous.cell() == cell && previous.worldId().equals(worldId)) {
+            return;
+        }
+
+        if (previous != null) {
+            removeFromCell(session, previous);
+        } else {
+            size.incrementAndGet();
+        }
+        worlds.computeIfAbsent(worldId, ignored -> new ConcurrentHashMap<>())
+                .compute(cell, (ignored, sessions) -> {
+                    Set<PlayerSession> occupants = sessions != null ? sessions : ConcurrentHashMap.newKeySet(4);
+                    occupants.add(session);
+                    return occupants;
+                });
+    }
+
+    /**
+     * Take a player out of the grid.
+     *
+     * @param session The player's session
+     */
+    public void remove(PlayerSession session) {
+        Position position = session.getGridPosition();
+        if (position == null) {
+            return;
+        }
+
+        session.setGridPosition(null);
+        removeFromCell(session, position);
+        size.decrementAndGet();
+    }
+
+    /**
+     * Find the players whose hitbox overlaps a box.
+     *
+     * @param world The world to search
+     * @param minX The minimum X of the box
+     * @param minY The minimum Y of the box
+     * @param minZ The minimum Z of the box
+     * @param maxX The maximum X of the box
+     * @param maxY The maximum Y of the box
+     * @param maxZ The maximum Z of the box
+     * @return The players found, in a buffer reused by the next query
+     */
+    public List<Player> getPlayersInBox(World world, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        List<Player> results = this.results.get();
+        results.clear();
+        Map<Long, Set<PlayerSession>> cells = worlds.get(world.getUID());
+        if (cells == null) {
+            return results;
+        }
+
+        // Hitboxes can stick out of the column a player stands in, so look one block further
+        int minCellX = (int) Math.floor(minX - 1) >> CELL_SHIFT;
+        int minCellZ = (int) Math.floor(minZ - 1) >> CELL_SHIFT;
+        int maxCellX = (int) Math.floor(maxX + 1) >> CELL_SHIFT;
+        int maxCellZ = (int) Math.floor(maxZ + 1) >> CELL_SHIFT;
+
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                long key = cellKey(cellX, cellZ);
+                Set<PlayerSession> cell = cells.get(key);
+                if (cell == null) {
+                    continue;
+                }
+
+                for (PlayerSession session : cell) {
+                    // Skip players who moved on since the column was read, so none is found twice
+                    Position position = session.getGridPosition();
+                    if (position != null && position.cell() == key && position.worldId().equals(world.getUID())
+                            && position.overlaps(minX, minY, minZ, maxX, maxY, maxZ)) {
+                        results.add(session.getPlayer());
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Find the other players within a distance of a player's hitbox, the same area
+     * {@link org.bukkit.entity.Entity#getNearbyEntities(double, double, double)} covers.
+     * Must be called on the player's thread.
+     *
+     * @param player The player at the center, who is not included
+     * @param radius The distance in blocks along each axis
+     * @return The players found, in a buffer reused by the next query
+     */
+    public List<Player> getPlayersNear(Player player, double radius) {
+        BoundingBox box = player.getBoundingBox();
+        List<Player> players = getPlayersInBox(player.getWorld(),
+                box.getMinX() - radius, box.getMinY() - radius, box.getMinZ() - radius,
+                box.getMaxX() + radius, box.getMaxY() + radius, box.getMaxZ() + radius);
+        players.remove(player);
+        return players;
+    }
+
+    /**
+     * Get the number of players in the grid.
+     *
+     * @return The player count
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Get the number of occupied columns across all worlds.
+     *
+     * @return The column count
+     */
+    public int getCellCount() {
+        int cellCount = 0;
+        for (Map<Long, Set<PlayerSession>> cells : worlds.values()) {
+            cellCount += cells.size();
+        }
+        return cellCount;
+    }
+
+    /**
+     * Take a player out of the column they were recorded in, dropping the column if it
+     * is left empty so the maps only hold occupied space. Worlds are kept, as there are few.
+     *
+     * @param session The player's session
+     * @param position Where the player was recorded
+     */
+    private void removeFromCell(PlayerSession session, Position position) {
+        Map<Long, Set<PlayerSession>> cells = worlds.get(position.worldId());
+        if (cells == null) {
+            return;
+        }
+        cells.computeIfPresent(position.cell(), (ignored, occupants) -> {
+            occupants.remove(session);
+            return occupants.isEmpty() ? null : occupants;
+        });
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,194 @@
+package com.guildwars.classes.managers;
+
+import com.guildwars.classes.integration.GuildMembershipCache;
+import com.guildwars.classes.model.PlayerClass;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+
+/**
+ * Per-player state kept while a player is online.
+ * <p>
+ * Listeners and commands resolve a player's session once per event and read everything
+ * else from it: the player's class, their cooldown slot and their cached guild. Sessions
+ * are opened and closed by the {@link SessionRegistry}.
+ */
+public class PlayerSession {
+
+    private final Player player;
+    private final UUID playerId;
+    private final int slot;
+    private final int cooldownSlot;
+    private final int[] abilityUses = new int[CooldownService.ABILITY_SLOTS];
+
+    private volatile PlayerClass playerClass;
+    private volatile GuildMembershipCache.Membership guildMembership;
+    private EffectReconciler.EffectSet appliedEffects = EffectReconciler.EffectSet.NONE;
+    private volatile PlayerGrid.Position gridPosition;
+    private int pendingCasts;
+
+    /**
+     * Creates a new session.
+     *
+     * @param player The player
+     * @param slot The dense slot assigned to the session
+     * @param cooldownSlot The player's pinned cooldown slot
+     */
+    PlayerSession(Player player, int slot, int cooldownSlot) {
+        this.player = player;
+        this.playerId = player.getUniqueId();
+        this.slot = slot;
+        this.cooldownSlot = cooldownSlot;
+    }
+
+    /**
+     * Get the player this session belongs to.
+     *
+     * @return The player
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Get the UUID of the player.
+     *
+     * @return The player's UUID
+     */
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Get the session's slot. Slots are dense and reused after a player leaves.
+     *
+     * @return The slot
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Get the player's slot in the cooldown service.
+     *
+     * @return The cooldown slot
+     */
+    public int getCooldownSlot() {
+        return cooldownSlot;
+    }
+
+    /**
+     * Get the player's class.
+     *
+     * @return The class, or null if the player has none
+     */
+    public PlayerClass getPlayerClass() {
+        return playerClass;
+    }
+
+    /**
+     * Set the player's class. Kept in step with the class manager.
+     *
+     * @param playerClass The class, or null for none
+     */
+    void setPlayerClass(PlayerClass playerClass) {
+        this.playerClass = playerClass;
+    }
+
+    /**
+     * Get the player's guild as last looked up.
+     *
+     * @return The cached membership, or null if it was never looked up
+     */
+    public GuildMembershipCache.Membership getGuildMembership() {
+        return guildMembership;
+    }
+
+    /**
+     * Keep the result of a guild lookup on the session.
+     *
+     * @param guildMembership The player's membership
+     */
+    public void setGuildMembership(GuildMembershipCache.Membership guildMembership) {
+        this.guildMembership = guildMembership;
+    }
+
+    /**
+     * Get the effects last applied to the player by the effect reconciler.
+     *
+     * @return The applied effects
+     */
+    EffectReconciler.EffectSet getAppliedEffects() {
+        return appliedEffects;
+    }
+
+    /**
+     * Record the effects applied to the player.
+     *
+     * @param appliedEffects The applied effects
+     */
+    void setAppliedEffects(EffectReconciler.EffectSet appliedEffects) {
+        this.appliedEffects = appliedEffects;
+    }
+
+    /**
+     * Get where the player was when the grid last updated them. Safe to read from any thread.
+     *
+     * @return The position, or null if the player is not in the grid
+     */
+    PlayerGrid.Position getGridPosition() {
+        return gridPosition;
+    }
+
+    /**
+     * Store where the player is in the grid. Called on the player's owning thread.
+     *
+     * @param gridPosition The position, or null if the player left the grid
+     */
+    void setGridPosition(PlayerGrid.Position gridPosition) {
+        this.gridPosition = gridPosition;
+    }
+
+    /**
+     * Mark a cast of an ability as queued. Only called on the player's owning thread.
+     *
+     * @param ability The ability slot
+     * @return True if no cast of the ability was queued yet
+     */
+    boolean markCastPending(int ability) {
+        int bit = 1 << ability;
+        if ((pendingCasts & bit) != 0) {
+            return false;
+        }
+        pendingCasts |= bit;
+        return true;
+    }
+
+    /**
+     * Mark a queued cast of an ability as taken off the queue. Only called on the player's owning thread.
+     *
+     * @param ability The ability slot
+     */
+    void clearCastPending(int ability) {
+        pendingCasts &= ~(1 << ability);
+    }
+
+    /**
+     * Count a successful ability use. Only called on the player's owning thread.
+     *
+     * @param ability The ability slot
+     */
+    public void recordAbilityUse(int ability) {
+        abilityUses[ability]++;
+    }
+
+    /**
+     * Get how often an ability was used this session.
+     *
+     * @param ability The ability slot
+     * @return The use count
+     */
+    public int getAbilityUses(int ability) {
+        return abilityUses[ability];
+    }
+}
@@ -0,0 +1,167 @@
+package com.guildwars.classes.managers;
+
+import java.util.UUID;
+
+/**
+ * Open-addressing hash table from player UUIDs to small non-negative ints.
+ * <p>
+ * Laid out like the {@link PlayerClassIndex} table: keys are stored as the UUID's two
+ * {@code long} halves and values in a parallel {@code int} array, so an entry costs 20
+ * bytes of array space instead of a boxed UUID, a boxed {@code Integer} and a
+ * {@code HashMap} node. Deletion shifts later entries back, so no tombstones build up.
+ * <p>
+ * Not thread safe; the owner must serialize access.
+ */
+final class PlayerSlotMap {
+
+    /**
+     * Value returned for players who are not in the map.
+     */
+    static final int ABSENT = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mostSigBits;
+    private long[] leastSigBits;
+
+    // Stored value plus one, so zero marks an empty entry
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates a new empty map.
+     */
+    PlayerSlotMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Get the value stored for a player.
+     *
+     * @param playerId The UUID of the player
+     * @return The value, or {@link #ABSENT}
+     */
+    int get(UUID playerId) {
+        return get(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+    }
+
+    /**
+     * Get the value stored for a player by the halves of their UUID.
+     *
+     * @param msb The high half of the player's UUID
+     * @param lsb The low half of the player's UUID
+     * @return The value, or {@link #ABSENT}
+     */
+    int get(long msb, long lsb) {
+        int entry = find(msb, lsb);
+        return entry < 0 ? ABSENT : values[entry] - 1;
+    }
+
+    /**
+     * Store a value for a player, replacing any earlier one.
+     *
+     * @param msb The high half of the player's UUID
+     * @param lsb The low half of the player's UUID
+     * @param value The value, at least 0
+     */
+    void put(long msb, long lsb, int value) {
+        int entry = find(msb, lsb);
+        if (entry < 0) {
+            // Keep the load factor at or below 3/4
+            if ((size + 1) * 4 > values.length * 3) {
+                resize(values.length * 2);
+            }
+            entry = insert(msb, lsb);
+            size++;
+        }
+        values[entry] = value + 1;
+    }
+
+    /**
+     * Remove a player by the halves of their UUID.
+     *
+     * @param msb The high half of the player's UUID
+     * @param lsb The low half of the player's UUID
+     */
+    void remove(long msb, long lsb) {
+        int entry = find(msb, lsb);
+        if (entry < 0) {
+            return;
+        }
+
+        // Move later entries of the same probe run into the hole if their home is not between the two
+        int hole = entry;
+        int next = (hole + 1) & mask;
+        while (values[next] != 0) {
+            int home = hash(mostSigBits[next], leastSigBits[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                mostSigBits[hole] = mostSigBits[next];
+                leastSigBits[hole] = leastSigBits[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = 0;
+        size--;
+    }
+
+    /**
+     * Get the number of players in the map.
+     *
+     * @return The entry count
+     */
+    int size() {
+        return size;
+    }
+
+    private int find(long msb, long lsb) {
+        int entry = hash(msb, lsb) & mask;
+        while (values[entry] != 0) {
+            if (mostSigBits[entry] == msb && leastSigBits[entry] == lsb) {
+                return entry;
+            }
+            entry = (entry + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insert(long msb, long lsb) {
+        int entry = hash(msb, lsb) & mask;
+        while (values[entry] != 0) {
+            entry = (entry + 1) & mask;
+        }
+        mostSigBits[entry] = msb;
+        leastSigBits[entry] = lsb;
+        return entry;
+    }
+
+    private void resize(int newCapacity) {
+        long[] oldMostSigBits = mostSigBits;
+        long[] oldLeastSigBits = leastSigBits;
+        int[] oldValues = values;
+        allocate(newCapacity);
+
+        for (int entry = 0; entry < oldValues.length; entry++) {
+            if (oldValues[entry] != 0) {
+                values[insert(oldMostSigBits[entry], oldLeastSigBits[entry])] = oldValues[entry];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mostSigBits = new long[capacity];
+        leastSigBits = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
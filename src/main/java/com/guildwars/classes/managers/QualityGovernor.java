@@ -0,0 +1,234 @@
+package com.guildwars.classes.managers;
+
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.config.ConfigManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Scales ability cosmetics down when the server falls behind.
+ * <p>
+ * The governor samples the average tick time once a second and picks a {@link Tier}.
+ * Quality drops as soon as tick time crosses a threshold, but only comes back one tier
+ * at a time, after tick time has stayed clearly below the threshold for several samples
+ * in a row, so it does not flap around a threshold. Only particles, sounds and chat
+ * lines are scaled; healing, knockback and potion effects never change. Admins can
+ * also pin a tier by hand.
+ */
+public class QualityGovernor {
+
+    private static final int MAX_TRANSITIONS = 10;
+
+    /**
+     * How much cosmetic output abilities produce.
+     */
+    public enum Tier {
+        /**
+         * Every particle, with sounds heard by everyone nearby and messages to targets.
+         */
+        FULL(1, 1.0, true, true),
+
+        /**
+         * Half the particles at half the view distance, and sounds only for the caster.
+         */
+        REDUCED(2, 0.5, false, true),
+
+        /**
+         * A quarter of the particles at a quarter of the view distance, and no sounds or
+         * messages for targets.
+         */
+        MINIMAL(4, 0.25, false, false);
+
+        private final int particleStride;
+        private final double viewDistanceScale;
+        private final boolean broadcastSounds;
+        private final boolean notifyTargets;
+
+        Tier(int particleStride, double viewDistanceScale, boolean broadcastSounds, boolean notifyTargets) {
+            this.particleStride = particleStride;
+            this.viewDistanceScale = viewDistanceScale;
+            this.broadcastSounds = broadcastSounds;
+            this.notifyTargets = notifyTargets;
+        }
+
+        /**
+         * Get the fewest particle points stepped over at this tier.
+         *
+         * @return 1 to draw every point, 2 for every other one, and so on
+         */
+        public int getParticleStride() {
+            return particleStride;
+        }
+
+        /**
+         * Get the share of the configured particle view distance used at this tier.
+         *
+         * @return The view distance multiplier
+         */
+        public double getViewDistanceScale() {
+            return viewDistanceScale;
+        }
+
+        /**
+         * Check whether ability sounds are heard by everyone nearby or only the caster.
+         *
+         * @return True if sounds are played to the world
+         */
+        public boolean broadcastsSounds() {
+            return broadcastSounds;
+        }
+
+        /**
+         * Check whether players hit by an ability get a sound and a chat message.
+         *
+         * @return True if targets are notified
+         */
+        public boolean notifiesTargets() {
+            return notifyTargets;
+        }
+    }
+
+    /**
+     * A change of tier.
+     *
+     * @param time When the tier changed, in epoch milliseconds
+     * @param from The previous tier
+     * @param to The new tier
+     * @param mspt The average tick time when the tier changed
+     * @param reason Why the tier changed
+     */
+    public record Transition(long time, Tier from, Tier to, double mspt, String reason) {
+    }
+
+    private final ConfigManager configManager;
+    private final DoubleSupplier tickTime;
+    private final Deque<Transition> transitions = new ArrayDeque<>();
+    private volatile Tier tier = Tier.FULL;
+    private volatile Tier forcedTier;
+    private volatile double lastMspt;
+    private int recoverySamples;
+
+    /**
+     * Creates a new quality governor.
+     *
+     * @param configManager The source of the thresholds
+     * @param tickTime Supplies the server's average tick time in milliseconds
+     */
+    public QualityGovernor(ConfigManager configManager, DoubleSupplier tickTime) {
+        this.configManager = configManager;
+        this.tickTime = tickTime;
+    }
+
+    /**
+     * Sample the tick time and change tier if needed. Called once a second on the main thread.
+     */
+    public void sample() {
+        ClassConfig.Quality settings = configManager.get().quality();
+        double mspt = tickTime.getAsDouble();
+        lastMspt = mspt;
+
+        Tier forced = forcedTier;
+        if (forced != null) {
+            changeTier(forced, mspt, "set by an admin");
+            return;
+        }
+        if (!settings.enabled()) {
+            changeTier(Tier.FULL, mspt, "governor disabled");
+            return;
+        }
+
+        Tier target = mspt >= settings.minimalMspt() ? Tier.MINIMAL
+                : mspt >= settings.reducedMspt() ? Tier.REDUCED
+                : Tier.FULL;
+
+        if (target.ordinal() > tier.ordinal()) {
+            // Shed load straight away
+            recoverySamples = 0;
+            changeTier(target, mspt, "tick time above threshold");
+            return;
+        }
+
+        // Recover one tier at a time, once tick time has stayed well below the current tier's threshold
+        double threshold = tier == Tier.MINIMAL ? settings.minimalMspt() : settings.reducedMspt();
+        if (target.ordinal() < tier.ordinal() && mspt < threshold - settings.recoveryMargin()) {
+            if (++recoverySamples >= settings.recoverySamples()) {
+                recoverySamples = 0;
+                changeTier(Tier.values()[tier.ordinal() - 1], mspt, "tick time recovered");
+            }
+        } else {
+            recoverySamples = 0;
+        }
+    }
+
+    /**
+     * Get the current tier. Safe to call from any thread.
+     *
+     * @return The tier
+     */
+    public Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Get the tier pinned by an admin.
+     *
+     * @return The pinned tier, or null if the tier is chosen automatically
+     */
+    public Tier getForcedTier() {
+        return forcedTier;
+    }
+
+    /**
+     * Pin a tier, or go back to choosing it from the tick time. Takes effect at once.
+     *
+     * @param forcedTier The tier to pin, or null for automatic
+     */
+    public void setForcedTier(Tier forcedTier) {
+        this.forcedTier = forcedTier;
+        recoverySamples = 0;
+        if (forcedTier != null) {
+            changeTier(forcedTier, lastMspt, "set by an admin");
+        }
+    }
+
+    /**
+     * Get the average tick time at the last sample.
+     *
+     * @return The tick time in milliseconds
+     */
+    public double getLastMspt() {
+        return lastMspt;
+    }
+
+    /**
+     * Get the most recent tier changes, oldest first.
+     *
+     * @return A copy of the recent transitions
+     */
+    public synchronized List<Transition> getTransitions() {
+        return new ArrayList<>(transitions);
+    }
+
+    /**
+     * Switch to a tier and record the transition.
+     *
+     * @param newTier The tier to switch to
+     * @param mspt The current tick time
+     * @param reason Why the tier changes
+     */
+    private synchronized void changeTier(Tier newTier, double mspt, String reason) {
+        if (newTier == tier) {
+            return;
+        }
+
+        transitions.addLast(new Transition(System.currentTimeMillis(), tier, newTier, mspt, reason));
+        if (transitions.size() > MAX_TRANSITIONS) {
+            transitions.removeFirst();
+        }
+        tier = newTier;
+    }
+}
@@ -0,0 +1,131 @@
+package com.guildwars.classes.managers;
+
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link PlayerSession} of every online player.
+ * <p>
+ * Each session takes a free slot when it opens and gives it back when the player leaves,
+ * so slots stay dense and can index arrays. Sessions may be opened and closed from any
+ * thread, as players join and leave on different regions on Folia; lookups never lock.
+ */
+public class SessionRegistry {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CooldownService cooldownService;
+    private final Map<UUID, PlayerSession> sessions = new ConcurrentHashMap<>();
+    private volatile PlayerSession[] bySlot = new PlayerSession[INITIAL_CAPACITY];
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeSlotCount;
+
+    /**
+     * Creates a new session registry.
+     *
+     * @param cooldownService The service sessions pin their cooldown slot in
+     */
+    public SessionRegistry(CooldownService cooldownService) {
+        this.cooldownService = cooldownService;
+        addFreeSlots(0, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Open a session for a player, or return the one already open.
+     *
+     * @param player The player
+     * @return The player's session
+     */
+    public synchronized PlayerSession open(Player player) {
+        PlayerSession existing = sessions.get(player.getUniqueId());
+        if (existing != null) {
+            return existing;
+        }
+
+        if (freeSlotCount == 0) {
+            int capacity = bySlot.length;
+            bySlot = Arrays.copyOf(bySlot, capacity * 2);
+            freeSlots = Arrays.copyOf(freeSlots, capacity * 2);
+            addFreeSlots(capacity, capacity * 2);
+        }
+
+        int slot = freeSlots[--freeSlotCount];
+        PlayerSession session = new PlayerSession(player, slot, cooldownService.pin(player.getUniqueId()));
+        bySlot[slot] = session;
+        sessions.put(session.getPlayerId(), session);
+        return session;
+    }
+
+    /**
+     * Close a player's session and free its slot.
+     *
+     * @param playerId The UUID of the player
+     */
+    public synchronized void close(UUID playerId) {
+        PlayerSession session = sessions.remove(playerId);
+        if (session == null) {
+            return;
+        }
+
+        bySlot[session.getSlot()] = null;
+        freeSlots[freeSlotCount++] = session.getSlot();
+        cooldownService.unpin(session.getCooldownSlot());
+    }
+
+    /**
+     * Get an online player's session.
+     *
+     * @param playerId The UUID of the player
+     * @return The session, or null if the player has none
+     */
+    public PlayerSession get(UUID playerId) {
+        return sessions.get(playerId);
+    }
+
+    /**
+     * Get all open sessions.
+     *
+     * @return An unmodifiable view of the sessions
+     */
+    public Collection<PlayerSession> getAll() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Get the session in a slot.
+     *
+     * @param slot The slot
+     * @return The session, or null if the slot is free
+     */
+    public PlayerSession getBySlot(int slot) {
+        PlayerSession[] sessionsBySlot = bySlot;
+        return slot >= 0 && slot < sessionsBySlot.length ? sessionsBySlot[slot] : null;
+    }
+
+    /**
+     * Get the number of open sessions.
+     *
+     * @return The session count
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Add a range of slots to the free list, lowest handed out first.
+     *
+     * @param from The first slot, inclusive
+     * @param to The last slot, exclusive
+     */
+    private void addFreeSlots(int from, int to) {
+        for (int slot = to - 1; slot >= from; slot--) {
+            freeSlots[freeSlotCount++] = slot;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.guildwars.classes.model;
+
+import com.guildwars.classes.managers.PlayerGrid;
+import org.bukkit.FluidCollisionMode;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.util.BoundingBox;
+import org.bukkit.util.RayTraceResult;
+import org.bukkit.util.Vector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the players hit by a straight beam.
+ * <p>
+ * The beam is a line segment with a thickness. One broad-phase query on the
+ * {@link PlayerGrid} collects the players whose hitbox overlaps the bounding box of the
+ * whole beam, then each hitbox is tested exactly against the segment. Every player is
+ * hit at most once, and hits are returned nearest first.
+ */
+public final class BeamQuery {
+
+    private BeamQuery() {
+    }
+
+    /**
+     * Shorten a beam so it ends at the first solid block in its path.
+     *
+     * @param start Where the beam starts
+     * @param direction The normalized direction of the beam
+     * @param length The full length of the beam in blocks
+     * @return The length up to the first block, or the full length if nothing is in the way
+     */
+    public static double clipToBlocks(Location start, Vector direction, double length) {
+        RayTraceResult blockHit = start.getWorld().rayTraceBlocks(start, direction, length, FluidCollisionMode.NEVER, true);
+        return blockHit == null ? length : blockHit.getHitPosition().distance(start.toVector());
+    }
+
+    /**
+     * Find the players a beam passes through.
+     *
+     * @param playerGrid The grid of online players to search
+     * @param caster The player casting the beam, who is never hit
+     * @param start Where the beam starts
+     * @param direction The normalized direction of the beam
+     * @param length The length of the beam in blocks
+     * @param radius How far from the beam a hitbox may be and still be hit
+     * @return The players hit with their distance along the beam, nearest first
+     */
+    public static List<Hit> findPlayers(PlayerGrid playerGrid, Player caster, Location start, Vector direction, double length, double radius) {
+        double ox = start.getX();
+        double oy = start.getY();
+        double oz = start.getZ();
+        double dx = direction.getX();
+        double dy = direction.getY();
+        double dz = direction.getZ();
+
+        // Broad phase: players overlapping the box around the whole beam
+        double ex = ox + dx * length;
+        double ey = oy + dy * length;
+        double ez = oz + dz * length;
+        List<Hit> hits = new ArrayList<>();
+        for (Player player : playerGrid.getPlayersInBox(start.getWorld(),
+                Math.min(ox, ex) - radius, Math.min(oy, ey) - radius, Math.min(oz, ez) - radius,
+                Math.max(ox, ex) + radius, Math.max(oy, ey) + radius, Math.max(oz, ez) + radius)) {
+            if (player == caster) {
+                continue;
+            }
+
+            // Narrow phase: the segment against the hitbox grown by the beam radius
+            BoundingBox box = player.getBoundingBox();
+            double distance = intersect(ox, oy, oz, dx, dy, dz, length,
+                    box.getMinX() - radius, box.getMinY() - radius, box.getMinZ() - radius,
+                    box.getMaxX() + radius, box.getMaxY() + radius, box.getMaxZ() + radius);
+            if (distance >= 0) {
+                hits.add(new Hit(player, distance));
+            }
+        }
+
+        hits.sort(Comparator.comparingDouble(Hit::distance));
+        return hits;
+    }
+
+    /**
+     * Intersect a segment with an axis-aligned box using the slab method.
+     *
+     * @param ox The X coordinate of the segment start
+     * @param oy The Y coordinate of the segment start
+     * @param oz The Z coordinate of the segment start
+     * @param dx The X component of the normalized direction
+     * @param dy The Y component of the normalized direction
+     * @param dz The Z component of the normalized direction
+     * @param length The length of the segment
+     * @param minX The minimum X of the box
+     * @param minY The minimum Y of the box
+     * @param minZ The minimum Z of the box
+     * @param maxX The maximum X of the box
+     * @param maxY The maximum Y of the box
+     * @param maxZ The maximum Z of the box
+     * @return The distance along the segment where it enters the box, 0 if it starts inside, or -1 if it misses
+     */
+    public static double intersect(double ox, double oy, double oz, double dx, double dy, double dz, double length,
+                                   double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        double near = 0;
+        double far = length;
+
+        // Clip the segment against each pair of planes in turn
+        for (int axis = 0; axis < 3; axis++) {
+            double origin = axis == 0 ? ox : axis == 1 ? oy : oz;
+            double direction = axis == 0 ? dx : axis == 1 ? dy : dz;
+            double min = axis == 0 ? minX : axis == 1 ? minY : minZ;
+            double max = axis == 0 ? maxX : axis == 1 ? maxY : maxZ;
+
+            if (direction == 0) {
+                // Parallel to the slab, so either always inside it or never
+                if (origin < min || origin > max) {
+                    return -1;
+                }
+                continue;
+            }
+
+            double t1 = (min - origin) / direction;
+            double t2 = (max - origin) / direction;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            if (near > far) {
+                return -1;
+            }
+        }
+        return near;
+    }
+
+    /**
+     * A player hit by a beam.
+     *
+     * @param player The player
+     * @param distance The distance along the beam
+     */
+    public record Hit(Player player, double distance) {
+    }
+}
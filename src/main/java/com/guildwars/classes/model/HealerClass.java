@@ -1,19 +1,26 @@
 package com.guildwars.classes.model;
 
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.config.ConfigManager;
+import com.guildwars.classes.managers.AbilityTask;
+import com.guildwars.classes.managers.PlayerSession;
+import com.guildwars.classes.particles.ParticleShape;
+import com.guildwars.classes.particles.ParticleStyle;
 import net.md_5.bungee.api.ChatColor;
 import org.bukkit.Color;
 import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
 import org.bukkit.Particle;
 import org.bukkit.Sound;
 import org.bukkit.attribute.Attribute;
-import org.bukkit.entity.Entity;
+import org.bukkit.attribute.AttributeModifier;
 import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityRegainHealthEvent;
 import org.bukkit.potion.PotionEffectType;
 import org.bukkit.util.Vector;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 /**
  * Represents the Healer class in the GuildWars Classes addon.
@@ -21,26 +28,71 @@ import java.util.UUID;
  */
 public class HealerClass extends PlayerClass {
 
-    private static final Map<UUID, Long> primaryAbilityCooldowns = new HashMap<>();
-    private static final Map<UUID, Long> secondaryAbilityCooldowns = new HashMap<>();
+    private static final NamespacedKey HEALTH_BOOST_KEY = PassiveModifiers.key("healer_health_boost");
+    private static final NamespacedKey GUILD_HEALTH_KEY = PassiveModifiers.key("guild_health_bonus");
     
-    private static final int PRIMARY_COOLDOWN_SECONDS = 30;
-    private static final int SECONDARY_COOLDOWN_SECONDS = 120;
+    // Ticks between each health point Regeneration I restores, halved for each level above it
+    private static final int REGENERATION_INTERVAL_TICKS = 50;
+    
+    private static final double BEAM_STEP = 0.5;
+    private static final double BEAM_RADIUS = 1.0;
+    private static final int AURA_RING_POINTS = 36;
+    private static final double BEAM_BLOCKS_PER_TICK = 10;
+    
+    // Long enough for the longest beam the config allows
+    private static final ParticleShape BEAM_SHAPE = ParticleShape.line(BEAM_STEP, 256);
+    private static final ParticleStyle HEALING_PARTICLES = new ParticleStyle(
+            Particle.DUST_COLOR_TRANSITION, 5, 0.1, 0, new Particle.DustTransition(Color.GREEN, Color.LIME, 1));
+    
+    private final ConfigManager configManager;
+    private volatile AuraRing auraRing;
     
     /**
      * Creates a new Healer class.
+     *
+     * @param configManager The source of the class settings
      */
-    public HealerClass() {
+    public HealerClass(ConfigManager configManager) {
         super("healer", "Healer", "A supportive class with extra health and healing abilities.");
+        this.configManager = configManager;
+    }
+
+    /**
+     * Get the current Healer settings. Abilities take them once per cast.
+     *
+     * @return The Healer settings
+     */
+    private ClassConfig.Healer settings() {
+        return configManager.get().healer();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return settings().enabled();
+    }
+
+    @Override
+    public List<PassiveModifier> getPassiveModifiers() {
+        // The maximum health of the configured Health Boost level
+        return List.of(new PassiveModifier(Attribute.MAX_HEALTH, HEALTH_BOOST_KEY,
+                PassiveModifiers.HEALTH_BOOST_PER_LEVEL * (settings().healthBoostLevel() + 1),
+                AttributeModifier.Operation.ADD_NUMBER));
+    }
+
+    @Override
+    public List<PassiveModifier> getGuildBonusModifiers(ClassConfig.GuildBonuses bonuses) {
+        if (bonuses.healerHealthBonus() <= 0) {
+            return List.of();
+        }
+        return List.of(new PassiveModifier(Attribute.MAX_HEALTH, GUILD_HEALTH_KEY,
+                PassiveModifiers.HEALTH_BOOST_PER_LEVEL * bonuses.healerHealthBonus(), AttributeModifier.Operation.ADD_NUMBER));
     }
 
     @Override
     public void applyEffects(Player player) {
-        // Apply health boost effect (level 1, infinite duration)
-        applyPotionEffect(player, PotionEffectType.HEALTH_BOOST, Integer.MAX_VALUE, 1, true, false);
-        
-        // Apply regeneration effect (level 0, infinite duration)
-        applyPotionEffect(player, PotionEffectType.REGENERATION, Integer.MAX_VALUE, 0, true, false);
+        // Players who joined before passives were modifiers still carry the old effects
+        PassiveModifiers.removeLegacyEffect(player, PotionEffectType.HEALTH_BOOST);
+        PassiveModifiers.removeLegacyEffect(player, PotionEffectType.REGENERATION);
         
         // Heal the player to their new maximum health
         player.setHealth(player.getAttribute(Attribute.MAX_HEALTH).getValue());
@@ -49,68 +101,52 @@ public class HealerClass extends PlayerClass {
     }
 
     @Override
-    public void removeEffects(Player player) {
-        // Remove health boost effect
-        removePotionEffect(player, PotionEffectType.HEALTH_BOOST);
+    public void onGuildBonusesApplied(Player player) {
+        // Fill some of the extra health straight away
+        player.setHealth(Math.min(player.getHealth() + PassiveModifiers.HEALTH_BOOST_PER_LEVEL, player.getAttribute(Attribute.MAX_HEALTH).getValue()));
+        player.sendMessage("§6[Guild Bonus] §aYour guild membership grants you additional health!");
+    }
+
+    @Override
+    public void tickPassive(Player player, int elapsedTicks) {
+        if (player.isDead()) {
+            return;
+        }
         
-        // Remove regeneration effect
-        removePotionEffect(player, PotionEffectType.REGENERATION);
+        // Heal at the rate of the configured Regeneration level
+        double maxHealth = player.getAttribute(Attribute.MAX_HEALTH).getValue();
+        if (player.getHealth() < maxHealth) {
+            int interval = Math.max(1, REGENERATION_INTERVAL_TICKS >> settings().regenerationLevel());
+            // Heal through the event so other plugins can still see and cancel passive healing
+            player.heal((double) elapsedTicks / interval, EntityRegainHealthEvent.RegainReason.MAGIC_REGEN);
+        }
     }
 
     @Override
-    public boolean performPrimaryAbility(Player player) {
-        UUID playerId = player.getUniqueId();
+    public boolean performPrimaryAbility(PlayerSession session) {
+        Player player = session.getPlayer();
         
         // Check cooldown
-        if (hasCooldown(player, "primary")) {
-            int remainingSeconds = getRemainingCooldown(player, "primary");
-            player.sendMessage(ChatColor.RED + "Healing Beam is on cooldown! " + remainingSeconds + " seconds remaining.");
+        int remainingSeconds = getRemainingCooldown(session, PRIMARY_ABILITY);
+        if (remainingSeconds > 0) {
+            player.sendMessage(ChatColor.RED + getAbilityName(PRIMARY_ABILITY) + " is on cooldown! " + remainingSeconds + " seconds remaining.");
             return false;
         }
         
+        ClassConfig.Healer settings = settings();
+        
         // Get the direction the player is looking
-        Vector direction = player.getLocation().getDirection();
+        Vector direction = player.getLocation().getDirection().normalize();
         Location startLocation = player.getEyeLocation();
+        double beamLength = settings.beamStopsAtBlocks()
+                ? BeamQuery.clipToBlocks(startLocation, direction, settings.beamLength())
+                : settings.beamLength();
         
-        // Create a healing beam effect
-        for (int i = 0; i < 40; i++) {
-            Location particleLocation = startLocation.clone().add(direction.clone().multiply(0.5 * i));
-            
-            // Display healing particles
-            player.getWorld().spawnParticle(
-                Particle.DUST_COLOR_TRANSITION, 
-                particleLocation, 
-                5, 
-                0.1, 0.1, 0.1, 
-                0, 
-                new Particle.DustOptions(Color.GREEN, 1)
-            );
-            
-            // Check for players to heal
-            for (Entity entity : player.getWorld().getNearbyEntities(particleLocation, 1, 1, 1)) {
-                if (entity instanceof Player) {
-                    Player target = (Player) entity;
-                    
-                    // Don't heal if already at max health
-                    if (target.getHealth() >= target.getAttribute(Attribute.MAX_HEALTH).getValue()) {
-                        continue;
-                    }
-                    
-                    // Heal the target for 6 hearts (12 health points)
-                    double newHealth = Math.min(target.getHealth() + 12, target.getAttribute(Attribute.MAX_HEALTH).getValue());
-                    target.setHealth(newHealth);
-                    
-                    // Apply regeneration effect (level 1, 10 seconds)
-                    applyPotionEffect(target, PotionEffectType.REGENERATION, 10 * 20, 1, true, true);
-                    
-                    // Play healing sound
-                    target.playSound(target.getLocation(), Sound.ENTITY_PLAYER_LEVELUP, 0.5f, 1.5f);
-                    
-                    // Send message to target
-                    target.sendMessage(ChatColor.GREEN + "You were healed by " + player.getName() + "!");
-                }
-            }
-        }
+        // Send the beam outward, healing each player in it the caster may heal once as it reaches them
+        ClassConfig.Targeting targeting = configManager.get().targeting();
+        List<BeamQuery.Hit> hits = BeamQuery.findPlayers(getPlayerGrid(), player, startLocation, direction, beamLength, BEAM_RADIUS);
+        hits.removeIf(hit -> !targeting.heals(getTargetRelation(session, hit.player())));
+        runStaged(player, new HealingBeam(player, startLocation, direction, beamLength, hits, settings, getQualityTier().notifiesTargets()));
         
         // Play sound effect
         player.playSound(player.getLocation(), Sound.BLOCK_BEACON_POWER_SELECT, 1.0f, 1.5f);
@@ -119,103 +155,199 @@ public class HealerClass extends PlayerClass {
         player.sendMessage(ChatColor.GREEN + "You cast a healing beam, restoring health to allies in its path!");
         
         // Set cooldown
-        primaryAbilityCooldowns.put(playerId, System.currentTimeMillis() + (PRIMARY_COOLDOWN_SECONDS * 1000));
+        startCooldown(session, PRIMARY_ABILITY, settings.beamCooldownSeconds());
         
         return true;
     }
 
     @Override
-    public boolean performSecondaryAbility(Player player) {
-        UUID playerId = player.getUniqueId();
+    public boolean performSecondaryAbility(PlayerSession session) {
+        Player player = session.getPlayer();
         
         // Check cooldown
-        if (hasCooldown(player, "secondary")) {
-            int remainingSeconds = getRemainingCooldown(player, "secondary");
-            player.sendMessage(ChatColor.RED + "Healing Aura is on cooldown! " + remainingSeconds + " seconds remaining.");
+        int remainingSeconds = getRemainingCooldown(session, SECONDARY_ABILITY);
+        if (remainingSeconds > 0) {
+            player.sendMessage(ChatColor.RED + getAbilityName(SECONDARY_ABILITY) + " is on cooldown! " + remainingSeconds + " seconds remaining.");
             return false;
         }
         
-        // Get nearby players within 10 blocks
-        player.getNearbyEntities(10, 10, 10).forEach(entity -> {
-            if (entity instanceof Player) {
-                Player target = (Player) entity;
-                
-                // Heal the target for 4 hearts (8 health points)
-                double newHealth = Math.min(target.getHealth() + 8, target.getAttribute(Attribute.MAX_HEALTH).getValue());
+        ClassConfig.Healer settings = settings();
+        double radius = settings.auraRadius();
+        
+        // Get nearby players within the aura radius
+        ClassConfig.Targeting targeting = configManager.get().targeting();
+        boolean notifyTargets = getQualityTier().notifiesTargets();
+        for (Player target : getNearbyPlayers(player, radius)) {
+            // Skip players the caster's guild does not heal
+            if (!targeting.heals(getTargetRelation(session, target))) {
+                continue;
+            }
+            
+            applyToTarget(target, () -> {
+                // Heal the target
+                double newHealth = Math.min(target.getHealth() + settings.auraHealing(), target.getAttribute(Attribute.MAX_HEALTH).getValue());
                 target.setHealth(newHealth);
                 
-                // Apply regeneration effect (level 1, 15 seconds)
-                applyPotionEffect(target, PotionEffectType.REGENERATION, 15 * 20, 1, true, true);
-                
-                // Apply absorption effect (level 1, 30 seconds)
-                applyPotionEffect(target, PotionEffectType.ABSORPTION, 30 * 20, 1, true, true);
+                // Apply regeneration effect
+                applyPotionEffect(target, PotionEffectType.REGENERATION, settings.auraRegenerationSeconds() * 20, settings.auraRegenerationLevel(), true, true);
                 
-                // Send message to target
-                target.sendMessage(ChatColor.GREEN + "You were healed by " + player.getName() + "'s Healing Aura!");
+                // Apply absorption effect
+                applyPotionEffect(target, PotionEffectType.ABSORPTION, settings.auraAbsorptionSeconds() * 20, settings.auraAbsorptionLevel(), true, true);
                 
-                // Play healing sound
-                target.playSound(target.getLocation(), Sound.ENTITY_PLAYER_LEVELUP, 0.5f, 1.5f);
-            }
-        });
+                if (notifyTargets) {
+                    // Send message to target
+                    target.sendMessage(ChatColor.GREEN + "You were healed by " + player.getName() + "'s Healing Aura!");
+                    
+                    // Play healing sound
+                    target.playSound(target.getLocation(), Sound.ENTITY_PLAYER_LEVELUP, 0.5f, 1.5f);
+                }
+            });
+        }
         
         // Create particle effect
-        for (int i = 0; i < 360; i += 10) {
-            double angle = Math.toRadians(i);
-            double x = Math.cos(angle) * 10;
-            double z = Math.sin(angle) * 10;
-            
-            Location particleLocation = player.getLocation().clone().add(x, 0.5, z);
-            
-            player.getWorld().spawnParticle(
-                Particle.DUST_COLOR_TRANSITION, 
-                particleLocation, 
-                5, 
-                0.1, 0.1, 0.1, 
-                0, 
-                new Particle.DustOptions(Color.GREEN, 1)
-            );
-        }
+        getParticleRenderer().render(auraRing(radius), HEALING_PARTICLES, player.getLocation());
         
         // Play sound effect
-        player.getWorld().playSound(player.getLocation(), Sound.BLOCK_BEACON_ACTIVATE, 1.0f, 1.2f);
+        playAbilitySound(player, Sound.BLOCK_BEACON_ACTIVATE, 1.0f, 1.2f);
         
         // Send message
         player.sendMessage(ChatColor.GREEN + "You create a healing aura, restoring health to all nearby allies!");
         
         // Set cooldown
-        secondaryAbilityCooldowns.put(playerId, System.currentTimeMillis() + (SECONDARY_COOLDOWN_SECONDS * 1000));
+        startCooldown(session, SECONDARY_ABILITY, settings.auraCooldownSeconds());
         
         return true;
     }
 
-    @Override
-    public boolean hasCooldown(Player player, String abilityName) {
-        UUID playerId = player.getUniqueId();
-        
-        if ("primary".equalsIgnoreCase(abilityName)) {
-            return primaryAbilityCooldowns.containsKey(playerId) && 
-                   primaryAbilityCooldowns.get(playerId) > System.currentTimeMillis();
-        } else if ("secondary".equalsIgnoreCase(abilityName)) {
-            return secondaryAbilityCooldowns.containsKey(playerId) && 
-                   secondaryAbilityCooldowns.get(playerId) > System.currentTimeMillis();
+    /**
+     * A Healing Beam travelling outward, {@link #BEAM_BLOCKS_PER_TICK} blocks per stage.
+     */
+    private final class HealingBeam implements AbilityTask {
+        
+        private final Player caster;
+        private final Location start;
+        private final Vector direction;
+        private final List<BeamQuery.Hit> hits;
+        private final ClassConfig.Healer settings;
+        private final boolean notifyTargets;
+        private final int pointCount;
+        private double front;
+        private int drawnPoints;
+        private int nextHit;
+        
+        private HealingBeam(Player caster, Location start, Vector direction, double length,
+                            List<BeamQuery.Hit> hits, ClassConfig.Healer settings, boolean notifyTargets) {
+            this.caster = caster;
+            this.start = start;
+            this.direction = direction;
+            this.hits = hits;
+            this.settings = settings;
+            this.notifyTargets = notifyTargets;
+            this.pointCount = (int) (length / BEAM_STEP);
+        }
+        
+        @Override
+        public boolean runStage() {
+            front += BEAM_BLOCKS_PER_TICK;
+            
+            // Draw the part of the beam covered this tick
+            int toPoint = Math.min(pointCount, (int) Math.ceil(front / BEAM_STEP));
+            getParticleRenderer().render(BEAM_SHAPE, HEALING_PARTICLES, start, direction, drawnPoints, toPoint);
+            drawnPoints = toPoint;
+            
+            // Heal the players the beam has reached
+            while (nextHit < hits.size() && hits.get(nextHit).distance() <= front) {
+                Player target = hits.get(nextHit++).player();
+                applyToTarget(target, () -> heal(target));
+            }
+            
+            return drawnPoints < pointCount || nextHit < hits.size();
         }
         
-        return false;
+        /**
+         * Heal one player hit by the beam, on the thread that owns them.
+         *
+         * @param target The player to heal
+         */
+        private void heal(Player target) {
+            // The player may have left since the beam was cast
+            if (!target.isValid()) {
+                return;
+            }
+            
+            double maxHealth = target.getAttribute(Attribute.MAX_HEALTH).getValue();
+            
+            // Don't heal if already at max health
+            if (target.getHealth() >= maxHealth) {
+                return;
+            }
+            
+            // Heal the target
+            target.setHealth(Math.min(target.getHealth() + settings.beamHealing(), maxHealth));
+            
+            // Apply regeneration effect
+            applyPotionEffect(target, PotionEffectType.REGENERATION, settings.beamRegenerationSeconds() * 20, settings.beamRegenerationLevel(), true, true);
+            
+            if (notifyTargets) {
+                // Play healing sound
+                target.playSound(target.getLocation(), Sound.ENTITY_PLAYER_LEVELUP, 0.5f, 1.5f);
+                
+                // Send message to target
+                target.sendMessage(ChatColor.GREEN + "You were healed by " + caster.getName() + "!");
+            }
+        }
     }
 
-    @Override
-    public int getRemainingCooldown(Player player, String abilityName) {
-        UUID playerId = player.getUniqueId();
-        
-        if ("primary".equalsIgnoreCase(abilityName) && primaryAbilityCooldowns.containsKey(playerId)) {
-            long remainingMillis = primaryAbilityCooldowns.get(playerId) - System.currentTimeMillis();
-            return remainingMillis > 0 ? (int) (remainingMillis / 1000) : 0;
-        } else if ("secondary".equalsIgnoreCase(abilityName) && secondaryAbilityCooldowns.containsKey(playerId)) {
-            long remainingMillis = secondaryAbilityCooldowns.get(playerId) - System.currentTimeMillis();
-            return remainingMillis > 0 ? (int) (remainingMillis / 1000) : 0;
+    /**
+     * A Healing Aura ring and the radius it was built for, swapped as one so threads
+     * casting at once never see a ring paired with the wrong radius.
+     *
+     * @param radius The aura radius
+     * @param shape The ring shape
+     */
+    private record AuraRing(double radius, ParticleShape shape) {
+    }
+
+    /**
+     * Get the Healing Aura ring for a radius, building it again only when the radius changes.
+     *
+     * @param radius The aura radius
+     * @return The ring shape
+     */
+    private ParticleShape auraRing(double radius) {
+        AuraRing ring = auraRing;
+        if (ring == null || ring.radius() != radius) {
+            ring = new AuraRing(radius, ParticleShape.ring(radius, AURA_RING_POINTS, 0.5));
+            auraRing = ring;
         }
-        
-        return 0;
+        return ring.shape();
+    }
+
+    @Override
+    public String getAbilityName(int ability) {
+        return ability == PRIMARY_ABILITY ? "Healing Beam" : "Healing Aura";
+    }
+
+    @Override
+    public String getGuildAbilityBonusMessage(int ability) {
+        return ability == PRIMARY_ABILITY
+                ? "Your healing abilities are enhanced by your guild membership!"
+                : "Your healing aura is enhanced by your guild membership!";
+    }
+
+    @Override
+    public String getPrimaryAbilityDescription() {
+        return "Healing Beam - Shoot a beam that heals allies in its path.";
+    }
+
+    @Override
+    public String getSecondaryAbilityDescription() {
+        return "Healing Aura - Heal all nearby allies and grant them absorption.";
+    }
+
+    @Override
+    public String getPassiveDescription() {
+        return "Increased health and slow regeneration.";
     }
 
     @Override
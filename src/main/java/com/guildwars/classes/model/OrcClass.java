@@ -1,13 +1,19 @@
 package com.guildwars.classes.model;
 
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.config.ConfigManager;
+import com.guildwars.classes.managers.PlayerSession;
 import net.md_5.bungee.api.ChatColor;
+import org.bukkit.NamespacedKey;
 import org.bukkit.Sound;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeModifier;
 import org.bukkit.entity.Player;
 import org.bukkit.potion.PotionEffectType;
+import org.bukkit.util.Vector;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 /**
  * Represents the Orc class in the GuildWars Classes addon.
@@ -15,55 +21,91 @@ import java.util.UUID;
  */
 public class OrcClass extends PlayerClass {
 
-    private static final Map<UUID, Long> primaryAbilityCooldowns = new HashMap<>();
-    private static final Map<UUID, Long> secondaryAbilityCooldowns = new HashMap<>();
-    
-    private static final int PRIMARY_COOLDOWN_SECONDS = 60;
-    private static final int SECONDARY_COOLDOWN_SECONDS = 180;
+    private static final NamespacedKey STRENGTH_KEY = PassiveModifiers.key("orc_strength");
+    private static final NamespacedKey SLOWNESS_KEY = PassiveModifiers.key("orc_slowness");
+    private static final NamespacedKey GUILD_STRENGTH_KEY = PassiveModifiers.key("guild_strength_bonus");
+
+    private final ConfigManager configManager;
     
     /**
      * Creates a new Orc class.
+     *
+     * @param configManager The source of the class settings
      */
-    public OrcClass() {
+    public OrcClass(ConfigManager configManager) {
         super("orc", "Orc", "A powerful warrior with extra strength but slower movement speed.");
+        this.configManager = configManager;
+    }
+
+    /**
+     * Get the current Orc settings. Abilities take them once per cast.
+     *
+     * @return The Orc settings
+     */
+    private ClassConfig.Orc settings() {
+        return configManager.get().orc();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return settings().enabled();
+    }
+
+    @Override
+    public List<PassiveModifier> getPassiveModifiers() {
+        ClassConfig.Orc settings = settings();
+        return List.of(
+                // The attack damage of the configured Strength level
+                new PassiveModifier(Attribute.ATTACK_DAMAGE, STRENGTH_KEY,
+                        PassiveModifiers.STRENGTH_DAMAGE_PER_LEVEL * (settings.strengthLevel() + 1),
+                        AttributeModifier.Operation.ADD_NUMBER),
+                // The speed taken away by the configured Slowness level
+                new PassiveModifier(Attribute.MOVEMENT_SPEED, SLOWNESS_KEY,
+                        Math.max(-1, -PassiveModifiers.SLOWNESS_SPEED_PER_LEVEL * (settings.slownessLevel() + 1)),
+                        AttributeModifier.Operation.MULTIPLY_SCALAR_1));
+    }
+
+    @Override
+    public List<PassiveModifier> getGuildBonusModifiers(ClassConfig.GuildBonuses bonuses) {
+        if (bonuses.orcStrengthBonus() <= 0) {
+            return List.of();
+        }
+        return List.of(new PassiveModifier(Attribute.ATTACK_DAMAGE, GUILD_STRENGTH_KEY,
+                PassiveModifiers.STRENGTH_DAMAGE_PER_LEVEL * bonuses.orcStrengthBonus(), AttributeModifier.Operation.ADD_NUMBER));
     }
 
     @Override
     public void applyEffects(Player player) {
-        // Apply strength effect (level 1, infinite duration)
-        applyPotionEffect(player, PotionEffectType.STRENGTH, Integer.MAX_VALUE, 0, true, false);
-        
-        // Apply slowness effect (level 0, infinite duration)
-        applyPotionEffect(player, PotionEffectType.SLOWNESS, Integer.MAX_VALUE, 0, true, false);
+        // Players who joined before passives were modifiers still carry the old effects
+        PassiveModifiers.removeLegacyEffect(player, PotionEffectType.STRENGTH);
+        PassiveModifiers.removeLegacyEffect(player, PotionEffectType.SLOWNESS);
         
         player.sendMessage(ChatColor.GREEN + "You feel the strength of an Orc flowing through your veins!");
     }
 
     @Override
-    public void removeEffects(Player player) {
-        // Remove strength effect
-        removePotionEffect(player, PotionEffectType.STRENGTH);
-        
-        // Remove slowness effect
-        removePotionEffect(player, PotionEffectType.SLOWNESS);
+    public void onGuildBonusesApplied(Player player) {
+        player.sendMessage("§6[Guild Bonus] §aYour guild membership grants you additional strength!");
     }
 
     @Override
-    public boolean performPrimaryAbility(Player player) {
-        UUID playerId = player.getUniqueId();
+    public boolean performPrimaryAbility(PlayerSession session) {
+        Player player = session.getPlayer();
         
         // Check cooldown
-        if (hasCooldown(player, "primary")) {
-            int remainingSeconds = getRemainingCooldown(player, "primary");
-            player.sendMessage(ChatColor.RED + "Orc Rage is on cooldown! " + remainingSeconds + " seconds remaining.");
+        int remainingSeconds = getRemainingCooldown(session, PRIMARY_ABILITY);
+        if (remainingSeconds > 0) {
+            player.sendMessage(ChatColor.RED + getAbilityName(PRIMARY_ABILITY) + " is on cooldown! " + remainingSeconds + " seconds remaining.");
             return false;
         }
         
-        // Apply temporary strength boost (level 2, 15 seconds)
-        applyPotionEffect(player, PotionEffectType.STRENGTH, 15 * 20, 1, true, true);
+        ClassConfig.Orc settings = settings();
         
-        // Apply temporary resistance (level 1, 15 seconds)
-        applyPotionEffect(player, PotionEffectType.RESISTANCE, 15 * 20, 0, true, true);
+        // Apply temporary strength boost
+        applyPotionEffect(player, PotionEffectType.STRENGTH, settings.rageDurationSeconds() * 20, settings.rageStrengthLevel(), true, true);
+        
+        // Apply temporary resistance
+        applyPotionEffect(player, PotionEffectType.RESISTANCE, settings.rageDurationSeconds() * 20, settings.rageResistanceLevel(), true, true);
         
         // Play sound effect
         player.playSound(player.getLocation(), Sound.ENTITY_RAVAGER_ROAR, 1.0f, 0.8f);
@@ -72,78 +114,86 @@ public class OrcClass extends PlayerClass {
         player.sendMessage(ChatColor.RED + "You unleash your Orc Rage, gaining increased strength and resistance!");
         
         // Set cooldown
-        primaryAbilityCooldowns.put(playerId, System.currentTimeMillis() + (PRIMARY_COOLDOWN_SECONDS * 1000));
+        startCooldown(session, PRIMARY_ABILITY, settings.rageCooldownSeconds());
         
         return true;
     }
 
     @Override
-    public boolean performSecondaryAbility(Player player) {
-        UUID playerId = player.getUniqueId();
+    public boolean performSecondaryAbility(PlayerSession session) {
+        Player player = session.getPlayer();
         
         // Check cooldown
-        if (hasCooldown(player, "secondary")) {
-            int remainingSeconds = getRemainingCooldown(player, "secondary");
-            player.sendMessage(ChatColor.RED + "Ground Slam is on cooldown! " + remainingSeconds + " seconds remaining.");
+        int remainingSeconds = getRemainingCooldown(session, SECONDARY_ABILITY);
+        if (remainingSeconds > 0) {
+            player.sendMessage(ChatColor.RED + getAbilityName(SECONDARY_ABILITY) + " is on cooldown! " + remainingSeconds + " seconds remaining.");
             return false;
         }
         
-        // Get nearby players within 5 blocks
-        player.getNearbyEntities(5, 5, 5).forEach(entity -> {
-            if (entity instanceof Player) {
-                Player target = (Player) entity;
-                
+        ClassConfig.Orc settings = settings();
+        double radius = settings.slamRadius();
+        
+        // Get nearby players within the slam radius
+        ClassConfig.Targeting targeting = configManager.get().targeting();
+        boolean notifyTargets = getQualityTier().notifiesTargets();
+        Vector center = player.getLocation().toVector();
+        for (Player target : getNearbyPlayers(player, radius)) {
+            // Spare guildmates and allies
+            if (!targeting.slams(getTargetRelation(session, target))) {
+                continue;
+            }
+            
+            applyToTarget(target, () -> {
                 // Apply knockback effect
-                target.setVelocity(target.getLocation().toVector().subtract(player.getLocation().toVector()).normalize().multiply(1.5).setY(0.5));
+                target.setVelocity(target.getLocation().toVector().subtract(center).normalize().multiply(settings.slamKnockbackPower()).setY(0.5));
                 
-                // Apply weakness effect (level 1, 10 seconds)
-                applyPotionEffect(target, PotionEffectType.WEAKNESS, 10 * 20, 0, true, true);
+                // Apply weakness effect (level 1)
+                applyPotionEffect(target, PotionEffectType.WEAKNESS, settings.slamWeaknessSeconds() * 20, 0, true, true);
                 
-                // Send message to target
-                target.sendMessage(ChatColor.RED + "You were hit by " + player.getName() + "'s Ground Slam!");
-            }
-        });
+                if (notifyTargets) {
+                    // Send message to target
+                    target.sendMessage(ChatColor.RED + "You were hit by " + player.getName() + "'s Ground Slam!");
+                }
+            });
+        }
         
         // Play sound effect
-        player.getWorld().playSound(player.getLocation(), Sound.ENTITY_GENERIC_EXPLODE, 1.0f, 0.5f);
+        playAbilitySound(player, Sound.ENTITY_GENERIC_EXPLODE, 1.0f, 0.5f);
         
         // Send message
         player.sendMessage(ChatColor.RED + "You slam the ground with your mighty strength, knocking back nearby enemies!");
         
         // Set cooldown
-        secondaryAbilityCooldowns.put(playerId, System.currentTimeMillis() + (SECONDARY_COOLDOWN_SECONDS * 1000));
+        startCooldown(session, SECONDARY_ABILITY, settings.slamCooldownSeconds());
         
         return true;
     }
 
     @Override
-    public boolean hasCooldown(Player player, String abilityName) {
-        UUID playerId = player.getUniqueId();
-        
-        if ("primary".equalsIgnoreCase(abilityName)) {
-            return primaryAbilityCooldowns.containsKey(playerId) && 
-                   primaryAbilityCooldowns.get(playerId) > System.currentTimeMillis();
-        } else if ("secondary".equalsIgnoreCase(abilityName)) {
-            return secondaryAbilityCooldowns.containsKey(playerId) && 
-                   secondaryAbilityCooldowns.get(playerId) > System.currentTimeMillis();
-        }
-        
-        return false;
+    public String getAbilityName(int ability) {
+        return ability == PRIMARY_ABILITY ? "Orc Rage" : "Ground Slam";
     }
 
     @Override
-    public int getRemainingCooldown(Player player, String abilityName) {
-        UUID playerId = player.getUniqueId();
-        
-        if ("primary".equalsIgnoreCase(abilityName) && primaryAbilityCooldowns.containsKey(playerId)) {
-            long remainingMillis = primaryAbilityCooldowns.get(playerId) - System.currentTimeMillis();
-            return remainingMillis > 0 ? (int) (remainingMillis / 1000) : 0;
-        } else if ("secondary".equalsIgnoreCase(abilityName) && secondaryAbilityCooldowns.containsKey(playerId)) {
-            long remainingMillis = secondaryAbilityCooldowns.get(playerId) - System.currentTimeMillis();
-            return remainingMillis > 0 ? (int) (remainingMillis / 1000) : 0;
-        }
-        
-        return 0;
+    public String getGuildAbilityBonusMessage(int ability) {
+        return ability == PRIMARY_ABILITY
+                ? "Your strength abilities are enhanced by your guild membership!"
+                : "Your ground slam is enhanced by your guild membership!";
+    }
+
+    @Override
+    public String getPrimaryAbilityDescription() {
+        return "Orc Rage - Gain increased strength and resistance for a short time.";
+    }
+
+    @Override
+    public String getSecondaryAbilityDescription() {
+        return "Ground Slam - Knock back nearby enemies and apply weakness.";
+    }
+
+    @Override
+    public String getPassiveDescription() {
+        return "Increased strength, but slower movement speed.";
     }
 
     @Override
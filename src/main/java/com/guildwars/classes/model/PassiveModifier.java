@@ -0,0 +1,46 @@
+package com.guildwars.classes.model;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeModifier;
+import org.bukkit.entity.Player;
+
+/**
+ * A lasting attribute change a class or guild bonus gives its players.
+ *
+ * @param attribute The attribute to modify
+ * @param key The modifier's key, unique within the plugin
+ * @param amount The amount to modify the attribute by
+ * @param operation How the amount is applied
+ */
+public record PassiveModifier(Attribute attribute, NamespacedKey key, double amount, AttributeModifier.Operation operation) {
+
+    /**
+     * Give the modifier to a player, replacing any earlier one with the same key.
+     *
+     * @param player The player
+     */
+    public void apply(Player player) {
+        PassiveModifiers.set(player, attribute, key, amount, operation);
+    }
+
+    /**
+     * Check whether a player still has the modifier, as a command or another plugin may
+     * have taken it away.
+     *
+     * @param player The player
+     * @return True if the player has it
+     */
+    public boolean isAppliedTo(Player player) {
+        return PassiveModifiers.has(player, attribute, key, amount, operation);
+    }
+
+    /**
+     * Take the modifier from a player, if they have it.
+     *
+     * @param player The player
+     */
+    public void remove(Player player) {
+        PassiveModifiers.remove(player, attribute, key);
+    }
+}
@@ -0,0 +1,142 @@
+package com.guildwars.classes.model;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.attribute.AttributeModifier;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.EquipmentSlotGroup;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+/**
+ * Applies the lasting stat changes of classes and guild bonuses as attribute modifiers.
+ * <p>
+ * Unlike potion effects, modifiers cost nothing per tick, show no icon or particles, and
+ * are not cleared by milk or {@code /effect clear}. Each one has a fixed key, so applying
+ * it again replaces it instead of stacking, and applying the same amount twice does
+ * nothing. They are transient: they are not saved with the player, so they never outlive
+ * the plugin, and are applied again when the player joins.
+ */
+public final class PassiveModifiers {
+
+    // Matches the namespace of keys created for this plugin
+    private static final String NAMESPACE = "guildwarsclasses";
+
+    // Attack damage per level of Strength
+    public static final double STRENGTH_DAMAGE_PER_LEVEL = 3.0;
+
+    // Speed lost per level of Slowness
+    public static final double SLOWNESS_SPEED_PER_LEVEL = 0.15;
+
+    // Maximum health per level of Health Boost
+    public static final double HEALTH_BOOST_PER_LEVEL = 4.0;
+
+    // Potion effects still this long were given as passives before modifiers were used
+    private static final int LEGACY_PASSIVE_MIN_TICKS = Integer.MAX_VALUE / 2;
+
+    private PassiveModifiers() {
+    }
+
+    /**
+     * Create the key of a modifier.
+     *
+     * @param name The name of the modifier, unique within the plugin
+     * @return The key
+     */
+    public static NamespacedKey key(String name) {
+        return new NamespacedKey(NAMESPACE, name);
+    }
+
+    /**
+     * Give a player a modifier, replacing any earlier one with the same key.
+     * A zero amount removes the modifier.
+     *
+     * @param player The player
+     * @param attribute The attribute to modify
+     * @param key The modifier's key
+     * @param amount The amount to modify the attribute by
+     * @param operation How the amount is applied
+     */
+    public static void set(Player player, Attribute attribute, NamespacedKey key, double amount, AttributeModifier.Operation operation) {
+        AttributeInstance instance = player.getAttribute(attribute);
+        if (instance == null) {
+            return;
+        }
+
+        AttributeModifier existing = instance.getModifier(key);
+        if (existing != null) {
+            if (existing.getAmount() == amount && existing.getOperation() == operation) {
+                return;
+            }
+            instance.removeModifier(key);
+        }
+        if (amount != 0) {
+            instance.addTransientModifier(new AttributeModifier(key, amount, operation, EquipmentSlotGroup.ANY));
+        }
+    }
+
+    /**
+     * Check whether a player has a modifier with the given amount, or none if the amount is zero.
+     *
+     * @param player The player
+     * @param attribute The attribute the modifier is on
+     * @param key The modifier's key
+     * @param amount The amount the modifier should have
+     * @param operation How the amount should be applied
+     * @return True if the player's modifier matches
+     */
+    public static boolean has(Player player, Attribute attribute, NamespacedKey key, double amount, AttributeModifier.Operation operation) {
+        AttributeInstance instance = player.getAttribute(attribute);
+        if (instance == null) {
+            return true;
+        }
+
+        AttributeModifier existing = instance.getModifier(key);
+        if (existing == null) {
+            return amount == 0;
+        }
+        return existing.getAmount() == amount && existing.getOperation() == operation;
+    }
+
+    /**
+     * Take a modifier from a player, if they have it.
+     *
+     * @param player The player
+     * @param attribute The attribute the modifier is on
+     * @param key The modifier's key
+     */
+    public static void remove(Player player, Attribute attribute, NamespacedKey key) {
+        AttributeInstance instance = player.getAttribute(attribute);
+        if (instance != null && instance.getModifier(key) != null) {
+            instance.removeModifier(key);
+        }
+    }
+
+    /**
+     * Take a passive potion effect from a player that an earlier version gave them and
+     * that was saved with the player. Effects of the same type from potions or abilities
+     * are left alone.
+     *
+     * @param player The player
+     * @param type The type of the effect
+     */
+    public static void removeLegacyEffect(Player player, PotionEffectType type) {
+        PotionEffect effect = player.getPotionEffect(type);
+        if (effect != null && effect.getDuration() >= LEGACY_PASSIVE_MIN_TICKS) {
+            player.removePotionEffect(type);
+        }
+    }
+
+    /**
+     * Lower a player's health to their maximum after it was reduced.
+     *
+     * @param player The player
+     */
+    public static void clampHealth(Player player) {
+        AttributeInstance maxHealth = player.getAttribute(Attribute.MAX_HEALTH);
+        if (maxHealth != null && player.getHealth() > maxHealth.getValue()) {
+            player.setHealth(maxHealth.getValue());
+        }
+    }
+}
@@ -1,10 +1,25 @@
 package com.guildwars.classes.model;
 
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.integration.GuildIntegration;
+import com.guildwars.classes.managers.AbilityExecutor;
+import com.guildwars.classes.managers.AbilityTask;
+import com.guildwars.classes.managers.ClassServices;
+import com.guildwars.classes.managers.CooldownService;
+import com.guildwars.classes.managers.PlayerGrid;
+import com.guildwars.classes.managers.PlayerSession;
+import com.guildwars.classes.managers.QualityGovernor;
+import com.guildwars.classes.managers.SessionRegistry;
+import com.guildwars.classes.particles.ParticleRenderer;
+import com.guildwars.classes.scheduler.TaskScheduler;
+import com.guildwars.model.Relation;
+import org.bukkit.Sound;
 import org.bukkit.entity.Player;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -12,9 +27,28 @@ import java.util.Map;
  */
 public abstract class PlayerClass {
     
+    /**
+     * Cooldown slot of the primary ability.
+     */
+    public static final int PRIMARY_ABILITY = 0;
+    
+    /**
+     * Cooldown slot of the secondary ability.
+     */
+    public static final int SECONDARY_ABILITY = 1;
+    
     private final String id;
     private final String name;
     private final String description;
+    private int ordinal = -1;
+    private CooldownService cooldownService;
+    private PlayerGrid playerGrid;
+    private ParticleRenderer particleRenderer;
+    private QualityGovernor qualityGovernor;
+    private AbilityExecutor abilityExecutor;
+    private TaskScheduler scheduler;
+    private SessionRegistry sessions;
+    private GuildIntegration guildIntegration;
     
     /**
      * Creates a new player class.
@@ -57,7 +91,152 @@ public abstract class PlayerClass {
     }
     
     /**
-     * Apply the class effects to a player.
+     * Gets the ordinal this class was registered under.
+     *
+     * @return The class ordinal, or -1 if the class is not registered
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+    
+    /**
+     * Called by the class registry when this class is registered.
+     *
+     * @param ordinal The ordinal assigned to this class
+     * @param services The services the class's abilities use
+     * @throws IllegalStateException If the class is already registered
+     */
+    public void onRegister(int ordinal, ClassServices services) {
+        if (this.ordinal >= 0) {
+            throw new IllegalStateException("Class " + id + " is already registered");
+        }
+        this.ordinal = ordinal;
+        this.cooldownService = services.cooldownService();
+        this.playerGrid = services.playerGrid();
+        this.particleRenderer = services.particleRenderer();
+        this.qualityGovernor = services.qualityGovernor();
+        this.abilityExecutor = services.abilityExecutor();
+        this.scheduler = services.scheduler();
+        this.sessions = services.sessions();
+        this.guildIntegration = services.guildIntegration();
+    }
+    
+    /**
+     * Run an ability effect over several ticks. The first stage runs straight away and
+     * the rest one per tick, within the executor's tick budget. On Folia the stages run on
+     * the caster's region and stop if the caster leaves.
+     *
+     * @param caster The player who used the ability
+     * @param task The effect to run
+     */
+    protected void runStaged(Player caster, AbilityTask task) {
+        abilityExecutor.schedule(caster, task);
+    }
+    
+    /**
+     * Apply an ability's effect to a player hit by it. Abilities run on the caster's thread,
+     * and on Folia a target may belong to another region; the effect is then handed to that
+     * region and runs at its next tick. Everything that changes the target, including
+     * messages and sounds, belongs in the effect.
+     *
+     * @param target The player hit by the ability
+     * @param effect The effect to apply
+     */
+    protected void applyToTarget(Player target, Runnable effect) {
+        scheduler.runForEntity(target, effect);
+    }
+    
+    /**
+     * Get the grid of online players that abilities find their targets in.
+     *
+     * @return The player grid, or null if the class is not registered
+     */
+    protected PlayerGrid getPlayerGrid() {
+        return playerGrid;
+    }
+    
+    /**
+     * Get the renderer abilities draw their particle effects with.
+     *
+     * @return The particle renderer, or null if the class is not registered
+     */
+    protected ParticleRenderer getParticleRenderer() {
+        return particleRenderer;
+    }
+    
+    /**
+     * Get how much cosmetic output abilities should produce right now. Cosmetics are
+     * particles, sounds and chat lines; gameplay effects must never depend on the tier.
+     *
+     * @return The current quality tier
+     */
+    protected QualityGovernor.Tier getQualityTier() {
+        return qualityGovernor == null ? QualityGovernor.Tier.FULL : qualityGovernor.getTier();
+    }
+    
+    /**
+     * Play an ability sound at a player. Everyone nearby hears it at full quality; under
+     * load only the player does.
+     *
+     * @param player The player using the ability
+     * @param sound The sound to play
+     * @param volume The volume
+     * @param pitch The pitch
+     */
+    protected void playAbilitySound(Player player, Sound sound, float volume, float pitch) {
+        if (getQualityTier().broadcastsSounds()) {
+            player.getWorld().playSound(player.getLocation(), sound, volume, pitch);
+        } else {
+            player.playSound(player.getLocation(), sound, volume, pitch);
+        }
+    }
+    
+    /**
+     * Find the other players within a distance of a player.
+     *
+     * @param player The player at the center
+     * @param radius The distance in blocks along each axis
+     * @return The players found, in a buffer reused by the next query
+     */
+    protected List<Player> getNearbyPlayers(Player player, double radius) {
+        return playerGrid.getPlayersNear(player, radius);
+    }
+    
+    /**
+     * Get the relation between the guilds of a caster and a player their ability reached.
+     *
+     * @param caster The session of the player using the ability
+     * @param target The player reached
+     * @return The relation, with guildmates as allies and players outside a guild as neutral
+     */
+    protected Relation getTargetRelation(PlayerSession caster, Player target) {
+        PlayerSession targetSession = sessions.get(target.getUniqueId());
+        return targetSession != null ? guildIntegration.getRelation(caster, targetSession) : Relation.NEUTRAL;
+    }
+    
+    /**
+     * Get the lasting attribute changes every player with this class has.
+     * The effect reconciler applies them and takes them away when the class is lost.
+     *
+     * @return The modifiers
+     */
+    public List<PassiveModifier> getPassiveModifiers() {
+        return List.of();
+    }
+    
+    /**
+     * Get the extra attribute changes players with this class have while in a guild.
+     *
+     * @param bonuses The guild bonus settings
+     * @return The modifiers
+     */
+    public List<PassiveModifier> getGuildBonusModifiers(ClassConfig.GuildBonuses bonuses) {
+        return List.of();
+    }
+    
+    /**
+     * Apply the one-off class effects, such as messages or healing, once the class's
+     * modifiers are in place.
      * This should be called when a player joins or when their class is set.
      *
      * @param player The player to apply effects to
@@ -65,30 +244,89 @@ public abstract class PlayerClass {
     public abstract void applyEffects(Player player);
     
     /**
-     * Remove the class effects from a player.
-     * This should be called when a player leaves or changes class.
+     * Apply the class effects that work over time, such as passive healing.
+     * Called on the player's thread about once a second for every online player with this class.
      *
-     * @param player The player to remove effects from
+     * @param player The player
+     * @param elapsedTicks The number of ticks since the last call
      */
-    public abstract void removeEffects(Player player);
+    public void tickPassive(Player player, int elapsedTicks) {
+        // No effects over time by default
+    }
     
     /**
      * Perform the primary ability of this class.
      * This is typically bound to right-click with a specific item.
      *
-     * @param player The player performing the ability
+     * @param session The session of the player performing the ability
      * @return True if the ability was used successfully, false otherwise
      */
-    public abstract boolean performPrimaryAbility(Player player);
+    public abstract boolean performPrimaryAbility(PlayerSession session);
     
     /**
      * Perform the secondary ability of this class.
      * This is typically bound to a specific command or action.
      *
-     * @param player The player performing the ability
+     * @param session The session of the player performing the ability
      * @return True if the ability was used successfully, false otherwise
      */
-    public abstract boolean performSecondaryAbility(Player player);
+    public abstract boolean performSecondaryAbility(PlayerSession session);
+    
+    /**
+     * Check whether players can currently select this class.
+     *
+     * @return True if the class is enabled
+     */
+    public boolean isEnabled() {
+        return true;
+    }
+    
+    /**
+     * Called once a player's guild bonus modifiers are in place, when they take this
+     * class while in a guild or join a guild with it.
+     *
+     * @param player The player
+     */
+    public void onGuildBonusesApplied(Player player) {
+        // Nothing to announce by default
+    }
+    
+    /**
+     * Get the message shown to guild members when they use an ability.
+     *
+     * @param ability The ability slot
+     * @return The message, or null to show none
+     */
+    public String getGuildAbilityBonusMessage(int ability) {
+        return null;
+    }
+    
+    /**
+     * Get a short description of the primary ability for class info.
+     *
+     * @return The description, or null if not described
+     */
+    public String getPrimaryAbilityDescription() {
+        return null;
+    }
+    
+    /**
+     * Get a short description of the secondary ability for class info.
+     *
+     * @return The description, or null if not described
+     */
+    public String getSecondaryAbilityDescription() {
+        return null;
+    }
+    
+    /**
+     * Get a short description of the passive effects for class info.
+     *
+     * @return The description, or null if not described
+     */
+    public String getPassiveDescription() {
+        return null;
+    }
     
     /**
      * Check if this class has a cooldown for the specified player.
@@ -97,7 +335,10 @@ public abstract class PlayerClass {
      * @param abilityName The name of the ability
      * @return True if the ability is on cooldown, false otherwise
      */
-    public abstract boolean hasCooldown(Player player, String abilityName);
+    public boolean hasCooldown(Player player, String abilityName) {
+        int ability = getAbilitySlot(abilityName);
+        return ability >= 0 && getRemainingCooldown(player, ability) > 0;
+    }
     
     /**
      * Get the remaining cooldown time for the specified player and ability.
@@ -106,7 +347,81 @@ public abstract class PlayerClass {
      * @param abilityName The name of the ability
      * @return The remaining cooldown time in seconds, or 0 if not on cooldown
      */
-    public abstract int getRemainingCooldown(Player player, String abilityName);
+    public int getRemainingCooldown(Player player, String abilityName) {
+        int ability = getAbilitySlot(abilityName);
+        return ability < 0 ? 0 : getRemainingCooldown(player, ability);
+    }
+    
+    /**
+     * Get the remaining cooldown time for the specified player and ability slot.
+     *
+     * @param player The player to check
+     * @param ability The ability slot
+     * @return The remaining cooldown time in whole seconds, rounded up, or 0 if not on cooldown
+     */
+    public int getRemainingCooldown(Player player, int ability) {
+        if (cooldownService == null) {
+            return 0;
+        }
+        
+        int remainingTicks = cooldownService.getRemainingTicks(player.getUniqueId(), ability);
+        return (remainingTicks + 19) / 20;
+    }
+    
+    /**
+     * Get the remaining cooldown time for an online player's ability, using the
+     * session's cooldown slot directly.
+     *
+     * @param session The player's session
+     * @param ability The ability slot
+     * @return The remaining cooldown time in whole seconds, rounded up, or 0 if not on cooldown
+     */
+    protected int getRemainingCooldown(PlayerSession session, int ability) {
+        if (cooldownService == null) {
+            return 0;
+        }
+        
+        int remainingTicks = cooldownService.getRemainingTicks(session.getCooldownSlot(), ability);
+        return (remainingTicks + 19) / 20;
+    }
+    
+    /**
+     * Put one of a player's abilities on cooldown.
+     *
+     * @param session The session of the player who used the ability
+     * @param ability The ability slot
+     * @param seconds The cooldown length in seconds
+     */
+    protected void startCooldown(PlayerSession session, int ability, int seconds) {
+        if (cooldownService != null) {
+            cooldownService.setCooldown(session.getCooldownSlot(), ability, seconds * 20);
+        }
+    }
+    
+    /**
+     * Get the display name of an ability, used in cooldown messages.
+     *
+     * @param ability The ability slot
+     * @return The ability name
+     */
+    public String getAbilityName(int ability) {
+        return ability == PRIMARY_ABILITY ? "Primary ability" : "Secondary ability";
+    }
+    
+    /**
+     * Get the cooldown slot for an ability name.
+     *
+     * @param abilityName The name of the ability
+     * @return The slot, or -1 if the name is unknown
+     */
+    private static int getAbilitySlot(String abilityName) {
+        if ("primary".equalsIgnoreCase(abilityName)) {
+            return PRIMARY_ABILITY;
+        } else if ("secondary".equalsIgnoreCase(abilityName)) {
+            return SECONDARY_ABILITY;
+        }
+        return -1;
+    }
     
     /**
      * Apply a potion effect to a player with the specified duration and amplifier.
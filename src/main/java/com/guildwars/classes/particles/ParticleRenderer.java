@@ -0,0 +1,191 @@
+package com.guildwars.classes.particles;
+
+import com.guildwars.classes.config.ClassConfig;
+import com.guildwars.classes.config.ConfigManager;
+import com.guildwars.classes.managers.PlayerGrid;
+import com.guildwars.classes.managers.QualityGovernor;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Draws {@link ParticleShape}s for the players close enough to see them.
+ * <p>
+ * Particles are sent to each viewer on their own rather than broadcast to the world, and
+ * only to viewers within the configured view distance of the shape. Shapes with many
+ * points are drawn with fewer of them for viewers beyond the full detail distance, down
+ * to a quarter of the points. The {@link QualityGovernor} thins effects out further and
+ * shortens the view distance while the server is under load. Viewers are found in the {@link PlayerGrid}, so drawing a
+ * shape replaces the grid's last query result on the calling thread. Safe to use from
+ * any thread.
+ */
+public class ParticleRenderer {
+
+    private static final int MIN_REDUCED_POINTS = 16;
+    private static final int MAX_STRIDE = 4;
+
+    private final ConfigManager configManager;
+    private final PlayerGrid playerGrid;
+    private final QualityGovernor qualityGovernor;
+    private final ThreadLocal<double[][]> positions = ThreadLocal.withInitial(() -> new double[][] {new double[64 * 3]});
+    private final LongAdder particlesSent = new LongAdder();
+
+    /**
+     * Creates a new particle renderer.
+     *
+     * @param configManager The source of the view distance settings
+     * @param playerGrid The grid viewers are found in
+     * @param qualityGovernor The governor scaling effects under load
+     */
+    public ParticleRenderer(ConfigManager configManager, PlayerGrid playerGrid, QualityGovernor qualityGovernor) {
+        this.configManager = configManager;
+        this.playerGrid = playerGrid;
+        this.qualityGovernor = qualityGovernor;
+    }
+
+    /**
+     * Draw a whole shape in the world's frame.
+     *
+     * @param shape The shape to draw
+     * @param style How to draw each point
+     * @param origin Where the shape's origin is
+     */
+    public void render(ParticleShape shape, ParticleStyle style, Location origin) {
+        render(shape, style, origin, null, 0, shape.getPointCount());
+    }
+
+    /**
+     * Draw a range of a shape's points, optionally turned to face a direction. Drawing a
+     * shape a range at a time lets an effect travel over several ticks.
+     *
+     * @param shape The shape to draw
+     * @param style How to draw each point
+     * @param origin Where the shape's origin is
+     * @param direction The normalized direction the shape faces, or null for the world's frame
+     * @param fromPoint The first point to draw, inclusive
+     * @param toPoint The last point to draw, exclusive
+     */
+    public void render(ParticleShape shape, ParticleStyle style, Location origin, Vector direction, int fromPoint, int toPoint) {
+        int pointCount = Math.min(toPoint, shape.getPointCount()) - fromPoint;
+        if (fromPoint < 0 || pointCount <= 0) {
+            return;
+        }
+
+        ClassConfig.Particles settings = configManager.get().particles();
+        QualityGovernor.Tier tier = qualityGovernor.getTier();
+        double[] points = place(shape, origin, direction, fromPoint, pointCount);
+
+        // Bounds of the placed points, used to measure how far away each viewer is
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < pointCount * 3; i += 3) {
+            minX = Math.min(minX, points[i]);
+            minY = Math.min(minY, points[i + 1]);
+            minZ = Math.min(minZ, points[i + 2]);
+            maxX = Math.max(maxX, points[i]);
+            maxY = Math.max(maxY, points[i + 1]);
+            maxZ = Math.max(maxZ, points[i + 2]);
+        }
+
+        double viewDistance = settings.viewDistance() * tier.getViewDistanceScale();
+        int count = Math.max(1, style.count() / tier.getParticleStride());
+        World world = origin.getWorld();
+        for (Player viewer : playerGrid.getPlayersInBox(world,
+                minX - viewDistance, minY - viewDistance, minZ - viewDistance,
+                maxX + viewDistance, maxY + viewDistance, maxZ + viewDistance)) {
+            Location eye = viewer.getEyeLocation();
+            double dx = Math.max(0, Math.max(minX - eye.getX(), eye.getX() - maxX));
+            double dy = Math.max(0, Math.max(minY - eye.getY(), eye.getY() - maxY));
+            double dz = Math.max(0, Math.max(minZ - eye.getZ(), eye.getZ() - maxZ));
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared > viewDistance * viewDistance) {
+                continue;
+            }
+
+            int stride = Math.max(tier.getParticleStride(), stride(Math.sqrt(distanceSquared), settings.fullDetailDistance(), pointCount));
+            for (int i = 0; i < pointCount; i += stride) {
+                viewer.spawnParticle(style.particle(), points[i * 3], points[i * 3 + 1], points[i * 3 + 2],
+                        count, style.spread(), style.spread(), style.spread(), style.extra(), style.data());
+                particlesSent.increment();
+            }
+        }
+    }
+
+    /**
+     * Get the number of particle points sent to viewers since the server started.
+     *
+     * @return The point count
+     */
+    public long getParticlesSent() {
+        return particlesSent.sum();
+    }
+
+    /**
+     * Work out the world position of each point into this thread's reused position buffer.
+     *
+     * @param shape The shape
+     * @param origin Where the shape's origin is
+     * @param direction The normalized direction the shape faces, or null for the world's frame
+     * @param fromPoint The first point to place
+     * @param pointCount How many points to place
+     * @return The buffer holding consecutive X, Y and Z values
+     */
+    private double[] place(ParticleShape shape, Location origin, Vector direction, int fromPoint, int pointCount) {
+        double[][] holder = this.positions.get();
+        if (holder[0].length < pointCount * 3) {
+            holder[0] = new double[pointCount * 3];
+        }
+        double[] positions = holder[0];
+
+        // Axes of the shape's frame in world space
+        double ax = 1, ay = 0, az = 0;
+        double bx = 0, by = 1, bz = 0;
+        double cx = 0, cy = 0, cz = 1;
+        if (direction != null) {
+            cx = direction.getX();
+            cy = direction.getY();
+            cz = direction.getZ();
+            double horizontal = Math.sqrt(cx * cx + cz * cz);
+            if (horizontal > 1.0E-6) {
+                ax = -cz / horizontal;
+                az = cx / horizontal;
+            }
+            // The second axis is square to the other two
+            bx = ay * cz - az * cy;
+            by = az * cx - ax * cz;
+            bz = ax * cy - ay * cx;
+        }
+
+        double[] offsets = shape.getOffsets();
+        double ox = origin.getX();
+        double oy = origin.getY();
+        double oz = origin.getZ();
+        for (int i = 0; i < pointCount * 3; i += 3) {
+            double a = offsets[fromPoint * 3 + i];
+            double b = offsets[fromPoint * 3 + i + 1];
+            double c = offsets[fromPoint * 3 + i + 2];
+            positions[i] = ox + a * ax + b * bx + c * cx;
+            positions[i + 1] = oy + a * ay + b * by + c * cy;
+            positions[i + 2] = oz + a * az + b * bz + c * cz;
+        }
+        return positions;
+    }
+
+    /**
+     * Work out how many points to step over for a viewer at some distance.
+     *
+     * @param distance The viewer's distance from the shape
+     * @param fullDetailDistance The distance up to which every point is drawn
+     * @param pointCount The number of points being drawn
+     * @return 1 to draw every point, 2 for every other one, and so on
+     */
+    private static int stride(double distance, double fullDetailDistance, int pointCount) {
+        if (pointCount < MIN_REDUCED_POINTS || distance <= fullDetailDistance) {
+            return 1;
+        }
+        return Math.min(MAX_STRIDE, 1 + (int) (distance / Math.max(1, fullDetailDistance)));
+    }
+}
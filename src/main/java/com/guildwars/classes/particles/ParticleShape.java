@@ -0,0 +1,71 @@
+package com.guildwars.classes.particles;
+
+/**
+ * A particle effect shape, precomputed once as a list of point offsets.
+ * <p>
+ * Offsets are given in the shape's own frame. Drawn without a direction, the frame is the
+ * world's X, Y and Z axes. Drawn along a direction, the third axis points along the
+ * direction, the second points up as far as the direction allows and the first is
+ * horizontal and square to both.
+ */
+public final class ParticleShape {
+
+    private final double[] offsets;
+
+    private ParticleShape(double[] offsets) {
+        this.offsets = offsets;
+    }
+
+    /**
+     * Create a horizontal ring.
+     *
+     * @param radius The radius of the ring in blocks
+     * @param points The number of points around the ring
+     * @param height How far above the origin the ring is drawn
+     * @return The shape
+     */
+    public static ParticleShape ring(double radius, int points, double height) {
+        double[] offsets = new double[points * 3];
+        for (int i = 0; i < points; i++) {
+            double angle = 2 * Math.PI * i / points;
+            offsets[i * 3] = Math.cos(angle) * radius;
+            offsets[i * 3 + 1] = height;
+            offsets[i * 3 + 2] = Math.sin(angle) * radius;
+        }
+        return new ParticleShape(offsets);
+    }
+
+    /**
+     * Create a straight line starting at the origin. Drawn along a direction, the line
+     * follows that direction; drawn without one, it follows the Z axis.
+     *
+     * @param spacing The distance between points in blocks
+     * @param points The number of points
+     * @return The shape
+     */
+    public static ParticleShape line(double spacing, int points) {
+        double[] offsets = new double[points * 3];
+        for (int i = 0; i < points; i++) {
+            offsets[i * 3 + 2] = spacing * i;
+        }
+        return new ParticleShape(offsets);
+    }
+
+    /**
+     * Get the number of points in the shape.
+     *
+     * @return The point count
+     */
+    public int getPointCount() {
+        return offsets.length / 3;
+    }
+
+    /**
+     * Get the point offsets as consecutive X, Y and Z values. Must not be modified.
+     *
+     * @return The offsets
+     */
+    double[] getOffsets() {
+        return offsets;
+    }
+}
@@ -0,0 +1,16 @@
+package com.guildwars.classes.particles;
+
+import org.bukkit.Particle;
+
+/**
+ * How each point of a {@link ParticleShape} is drawn. Styles are immutable, so one
+ * instance, including its particle data, is shared by every cast.
+ *
+ * @param particle The particle type
+ * @param count The number of particles at each point
+ * @param spread The random spread around each point in blocks
+ * @param extra The extra value passed with the particle, usually its speed
+ * @param data The particle data, or null if the type takes none
+ */
+public record ParticleStyle(Particle particle, int count, double spread, double extra, Object data) {
+}
@@ -0,0 +1,182 @@
+package com.guildwars.classes.scheduler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Schedules tasks on the right thread for both Paper and Folia.
+ * <p>
+ * On Paper every task runs on the main thread. On Folia the server is split into regions
+ * that tick on their own threads, and an entity may only be touched by the thread of the
+ * region it is in. Tasks about the server as a whole run on the global region, and tasks
+ * about an entity run on the region that owns it, following the entity as it moves.
+ */
+public class TaskScheduler {
+
+    private final Plugin plugin;
+    private final boolean folia;
+
+    /**
+     * Creates a new task scheduler, detecting whether the server runs Folia.
+     *
+     * @param plugin The plugin that owns the tasks
+     */
+    public TaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+        this.folia = isClassPresent("io.papermc.paper.threadedregions.RegionizedServer");
+    }
+
+    /**
+     * Check whether the server runs Folia.
+     *
+     * @return True on Folia, false on Paper and Spigot
+     */
+    public boolean isFolia() {
+        return folia;
+    }
+
+    /**
+     * Run a task on the main thread, or the global region on Folia, at the next tick.
+     *
+     * @param task The task to run
+     */
+    public void runGlobal(Runnable task) {
+        if (folia) {
+            Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    /**
+     * Run a task repeatedly on the main thread, or the global region on Folia, until it
+     * returns false.
+     *
+     * @param task The task to run, returning true to keep running
+     * @param delayTicks The ticks before the first run, at least 1
+     * @param periodTicks The ticks between runs
+     */
+    public void runGlobalTimer(BooleanSupplier task, long delayTicks, long periodTicks) {
+        if (folia) {
+            Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, scheduled -> {
+                if (!task.getAsBoolean()) {
+                    scheduled.cancel();
+                }
+            }, delayTicks, periodTicks);
+        } else {
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    if (!task.getAsBoolean()) {
+                        cancel();
+                    }
+                }
+            }.runTaskTimer(plugin, delayTicks, periodTicks);
+        }
+    }
+
+    /**
+     * Run a task for an entity on the thread that owns it. The task runs straight away if
+     * the current thread already owns the entity, and at the next tick otherwise. Nothing
+     * runs if the entity is removed first.
+     *
+     * @param entity The entity the task touches
+     * @param task The task to run
+     */
+    public void runForEntity(Entity entity, Runnable task) {
+        if (folia) {
+            if (Bukkit.isOwnedByCurrentRegion(entity)) {
+                task.run();
+            } else {
+                entity.getScheduler().run(plugin, scheduled -> task.run(), null);
+            }
+        } else if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (entity.isValid()) {
+                    task.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Run a task for an entity on the thread that owns it after a delay. Nothing runs if
+     * the entity is removed first.
+     *
+     * @param entity The entity the task touches
+     * @param task The task to run
+     * @param delayTicks The ticks to wait, at least 1
+     */
+    public void runForEntityLater(Entity entity, Runnable task, long delayTicks) {
+        if (folia) {
+            entity.getScheduler().runDelayed(plugin, scheduled -> task.run(), null, delayTicks);
+        } else {
+            Bukkit.getScheduler().runTaskLater(plugin, () -> {
+                if (entity.isValid()) {
+                    task.run();
+                }
+            }, delayTicks);
+        }
+    }
+
+    /**
+     * Run a task for an entity every tick on the thread that owns it, until the task
+     * returns false or the entity is removed.
+     *
+     * @param entity The entity the task follows
+     * @param task The task to run, returning true to keep running
+     */
+    public void runForEntityEveryTick(Entity entity, BooleanSupplier task) {
+        if (folia) {
+            entity.getScheduler().runAtFixedRate(plugin, scheduled -> {
+                if (!task.getAsBoolean()) {
+                    scheduled.cancel();
+                }
+            }, null, 1L, 1L);
+        } else {
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    if (!entity.isValid() || !task.getAsBoolean()) {
+                        cancel();
+                    }
+                }
+            }.runTaskTimer(plugin, 1L, 1L);
+        }
+    }
+
+    /**
+     * Run a task for a command sender at the next tick: on the thread that owns the sender
+     * if it is an entity, such as a player, or globally for the console.
+     *
+     * @param sender The command sender
+     * @param task The task to run
+     */
+    public void runForSender(CommandSender sender, Runnable task) {
+        if (sender instanceof Entity entity) {
+            if (folia) {
+                entity.getScheduler().run(plugin, scheduled -> task.run(), null);
+            } else {
+                Bukkit.getScheduler().runTask(plugin, task);
+            }
+        } else {
+            runGlobal(task);
+        }
+    }
+
+    private static boolean isClassPresent(String className) {
+        try {
+            Class.forName(className);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+package com.guildwars.classes.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Compact binary storage for player classes.
+ * <p>
+ * Data is kept in two files per generation:
+ * <ul>
+ *     <li>{@code classes.<gen>.snap} - a sorted snapshot of 17-byte records (UUID + class code),
+ *     read through a memory-mapped buffer and searched with a binary search.</li>
+ *     <li>{@code classes.<gen>.log} - an append-only journal of changes made since the snapshot.</li>
+ * </ul>
+ * Class ids are stored once in a dictionary and referenced by a one-byte code.
+ * Compaction merges the journal into a new snapshot generation and starts an empty journal.
+ * <p>
+ * All methods are synchronized; the journal is written by the storage thread and may be read
+ * from any thread.
+ */
+public class ClassJournal {
+
+    private static final int SNAPSHOT_MAGIC = 0x47574353; // "GWCS"
+    private static final int JOURNAL_MAGIC = 0x4757434A; // "GWCJ"
+    private static final short FORMAT_VERSION = 1;
+
+    private static final byte RECORD_DEFINE = 1;
+    private static final byte RECORD_PUT = 2;
+    private static final byte RECORD_REMOVE = 3;
+
+    private static final int SNAPSHOT_RECORD_SIZE = 17;
+    private static final int MAX_CLASS_CODES = 256;
+
+    /**
+     * Marker stored in the overlay when a player's class has been removed.
+     */
+    private static final String REMOVED = "";
+
+    private final File directory;
+    private final String baseName;
+    private final Logger logger;
+
+    private final Map<String, Integer> classCodes = new HashMap<>();
+    private final List<String> classIds = new ArrayList<>();
+    private final Map<UUID, String> overlay = new HashMap<>();
+
+    private long generation;
+    private MappedByteBuffer snapshot;
+    private int snapshotRecordsOffset;
+    private int snapshotRecordCount;
+
+    private FileChannel journalChannel;
+    private long journalRecordCount;
+
+    /**
+     * Creates a new class journal. Call {@link #open()} before use.
+     *
+     * @param directory The directory the journal files are kept in
+     * @param baseName The file name prefix
+     * @param logger The logger to report problems to
+     */
+    public ClassJournal(File directory, String baseName, Logger logger) {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.logger = logger;
+    }
+
+    /**
+     * Open the newest snapshot and replay its journal.
+     *
+     * @throws IOException If the files could not be read
+     */
+    public synchronized void open() throws IOException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        generation = findLatestGeneration();
+        if (generation > 0) {
+            mapSnapshot(snapshotFile(generation));
+        }
+        replayJournal(journalFile(generation));
+        deleteOldGenerations();
+    }
+
+    /**
+     * Check whether any data has been written to this journal.
+     *
+     * @return True if no snapshot or journal exists yet
+     */
+    public synchronized boolean isEmpty() {
+        return generation == 0 && journalRecordCount == 0;
+    }
+
+    /**
+     * Look up a single player's class.
+     *
+     * @param playerId The UUID of the player
+     * @return The class ID, or null if the player has none
+     */
+    public synchronized String get(UUID playerId) {
+        String classId = overlay.get(playerId);
+        if (classId != null) {
+            return classId.isEmpty() ? null : classId;
+        }
+
+        int index = findSnapshotRecord(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+        if (index < 0) {
+            return null;
+        }
+        return classIds.get(Byte.toUnsignedInt(snapshot.get(snapshotRecordsOffset + index * SNAPSHOT_RECORD_SIZE + 16)));
+    }
+
+    /**
+     * Read every stored player class.
+     *
+     * @return A map of player UUIDs to class IDs
+     */
+    public synchronized Map<UUID, String> loadAll() {
+        Map<UUID, String> playerClasses = new HashMap<>(Math.max(16, (snapshotRecordCount + overlay.size()) * 4 / 3));
+
+        for (int i = 0; i < snapshotRecordCount; i++) {
+            int position = snapshotRecordsOffset + i * SNAPSHOT_RECORD_SIZE;
+            UUID playerId = new UUID(snapshot.getLong(position), snapshot.getLong(position + 8));
+            playerClasses.put(playerId, classIds.get(Byte.toUnsignedInt(snapshot.get(position + 16))));
+        }
+
+        for (Map.Entry<UUID, String> entry : overlay.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                playerClasses.remove(entry.getKey());
+            } else {
+                playerClasses.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return playerClasses;
+    }
+
+    /**
+     * Append a batch of changes to the journal and sync it to disk.
+     *
+     * @param changes Player UUIDs mapped to their new class ID, or an empty string for a removal
+     * @throws IOException If the journal could not be written
+     */
+    public synchronized void append(Map<UUID, String> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        if (journalChannel == null) {
+            createJournal();
+        }
+
+        // Worst case every change defines a new class id as well
+        ByteBuffer buffer = ByteBuffer.allocate(changes.size() * (SNAPSHOT_RECORD_SIZE + 1) + estimateDefinitionSize(changes));
+        List<String> newClassIds = new ArrayList<>();
+        long records = 0;
+
+        for (Map.Entry<UUID, String> entry : changes.entrySet()) {
+            UUID playerId = entry.getKey();
+            String classId = entry.getValue();
+
+            if (classId.isEmpty()) {
+                buffer.put(RECORD_REMOVE);
+                buffer.putLong(playerId.getMostSignificantBits());
+                buffer.putLong(playerId.getLeastSignificantBits());
+            } else {
+                Integer code = classCodes.get(classId);
+                if (code == null) {
+                    int pending = newClassIds.indexOf(classId);
+                    if (pending < 0) {
+                        if (classIds.size() + newClassIds.size() >= MAX_CLASS_CODES) {
+                            throw new IOException("Too many distinct class ids for the journal format");
+                        }
+                        pending = newClassIds.size();
+                        newClassIds.add(classId);
+                        byte[] idBytes = classId.getBytes(StandardCharsets.UTF_8);
+                        buffer.put(RECORD_DEFINE);
+                        buffer.put((byte) (classIds.size() + pending));
+                        buffer.putShort((short) idBytes.length);
+                        buffer.put(idBytes);
+                        records++;
+                    }
+                    code = classIds.size() + pending;
+                }
+                buffer.put(RECORD_PUT);
+                buffer.putLong(playerId.getMostSignificantBits());
+                buffer.putLong(playerId.getLeastSignificantBits());
+                buffer.put(code.byteValue());
+            }
+            records++;
+        }
+
+        buffer.flip();
+        long start = journalChannel.position();
+        try {
+            while (buffer.hasRemaining()) {
+                journalChannel.write(buffer);
+            }
+            journalChannel.force(false);
+        } catch (IOException e) {
+            // Cut off the partial batch so the journal stays readable; the caller retries it
+            journalChannel.truncate(start);
+            journalChannel.position(start);
+            throw e;
+        }
+
+        // Only update the in-memory view once the batch is durable
+        for (String classId : newClassIds) {
+            defineClass(classId);
+        }
+        overlay.putAll(changes);
+        journalRecordCount += records;
+    }
+
+    /**
+     * Get the number of records in the journal since the last compaction.
+     *
+     * @return The journal record count
+     */
+    public synchronized long getJournalRecordCount() {
+        return journalRecordCount;
+    }
+
+    /**
+     * Get the number of players in the current snapshot.
+     *
+     * @return The snapshot record count
+     */
+    public synchronized int getSnapshotRecordCount() {
+        return snapshotRecordCount;
+    }
+
+    /**
+     * Merge the journal into a new snapshot generation.
+     *
+     * @throws IOException If the new snapshot could not be written
+     */
+    public synchronized void compact() throws IOException {
+        if (journalRecordCount == 0 && generation > 0) {
+            return;
+        }
+        writeSnapshot(new TreeMap<>(loadAll()));
+    }
+
+    /**
+     * Replace the contents of this journal with the given data, writing it straight
+     * into a new snapshot. Used to import data from other formats.
+     *
+     * @param playerClasses A map of player UUIDs to class IDs
+     * @throws IOException If the snapshot could not be written
+     */
+    public synchronized void importAll(Map<UUID, String> playerClasses) throws IOException {
+        overlay.clear();
+        writeSnapshot(new TreeMap<>(playerClasses));
+    }
+
+    /**
+     * Close the journal files.
+     */
+    public synchronized void close() {
+        closeJournal();
+        snapshot = null;
+    }
+
+    /**
+     * Close the journal and delete all of its files.
+     */
+    public synchronized void delete() {
+        close();
+        overlay.clear();
+        journalRecordCount = 0;
+        snapshotRecordCount = 0;
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(baseName + "."));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    logger.warning("Could not delete old class data file " + file.getName());
+                }
+            }
+        }
+        generation = 0;
+    }
+
+    /**
+     * Write a sorted map as the next snapshot generation and switch to it.
+     *
+     * @param sorted Player classes sorted by UUID
+     * @throws IOException If the snapshot could not be written
+     */
+    private void writeSnapshot(TreeMap<UUID, String> sorted) throws IOException {
+        long nextGeneration = generation + 1;
+        File target = snapshotFile(nextGeneration);
+        File temp = new File(directory, target.getName() + ".tmp");
+
+        // Rebuild the dictionary so removed classes do not keep their codes forever
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (String classId : sorted.values()) {
+            if (!codes.containsKey(classId)) {
+                if (ids.size() >= MAX_CLASS_CODES) {
+                    throw new IOException("Too many distinct class ids for the journal format");
+                }
+                codes.put(classId, ids.size());
+                ids.add(classId);
+            }
+        }
+
+        try (FileOutputStream fileOut = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeShort(ids.size());
+            for (String classId : ids) {
+                byte[] idBytes = classId.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(idBytes.length);
+                out.write(idBytes);
+            }
+            out.writeInt(sorted.size());
+            for (Map.Entry<UUID, String> entry : sorted.entrySet()) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeByte(codes.get(entry.getValue()));
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The new snapshot contains everything, so the old journal can go
+        closeJournal();
+        generation = nextGeneration;
+        overlay.clear();
+        journalRecordCount = 0;
+        mapSnapshot(target);
+        deleteOldGenerations();
+    }
+
+    /**
+     * Map a snapshot file into memory and read its dictionary.
+     *
+     * @param file The snapshot file
+     * @throws IOException If the file could not be read or is not a snapshot
+     */
+    private void mapSnapshot(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getShort() != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format: " + file.getName());
+            }
+
+            classCodes.clear();
+            classIds.clear();
+            int dictionarySize = Short.toUnsignedInt(buffer.getShort());
+            for (int i = 0; i < dictionarySize; i++) {
+                byte[] idBytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(idBytes);
+                defineClass(new String(idBytes, StandardCharsets.UTF_8));
+            }
+
+            int recordCount = buffer.getInt();
+            if (buffer.remaining() < (long) recordCount * SNAPSHOT_RECORD_SIZE) {
+                throw new IOException("Truncated snapshot: " + file.getName());
+            }
+
+            snapshot = buffer;
+            snapshotRecordsOffset = buffer.position();
+            snapshotRecordCount = recordCount;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot: " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Replay a journal file into the overlay. A torn record at the end of the
+     * file, left by a crash mid-write, is cut off.
+     *
+     * @param file The journal file
+     * @throws IOException If the file could not be read
+     */
+    private void replayJournal(File file) throws IOException {
+        overlay.clear();
+        journalRecordCount = 0;
+
+        if (!file.exists()) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        long validLength = 0;
+
+        try {
+            if (buffer.getInt() != JOURNAL_MAGIC || buffer.getShort() != FORMAT_VERSION) {
+                throw new IOException("Unsupported journal format: " + file.getName());
+            }
+            validLength = buffer.position();
+
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                switch (type) {
+                    case RECORD_DEFINE: {
+                        int code = Byte.toUnsignedInt(buffer.get());
+                        byte[] idBytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+                        buffer.get(idBytes);
+                        String classId = new String(idBytes, StandardCharsets.UTF_8);
+                        if (code != classIds.size()) {
+                            throw new IOException("Out of order class definition in " + file.getName());
+                        }
+                        defineClass(classId);
+                        break;
+                    }
+                    case RECORD_PUT: {
+                        UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+                        overlay.put(playerId, classIds.get(Byte.toUnsignedInt(buffer.get())));
+                        break;
+                    }
+                    case RECORD_REMOVE:
+                        overlay.put(new UUID(buffer.getLong(), buffer.getLong()), REMOVED);
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record " + type + " in " + file.getName());
+                }
+                journalRecordCount++;
+                validLength = buffer.position();
+            }
+        } catch (BufferUnderflowException e) {
+            logger.warning("Discarding incomplete record at the end of " + file.getName());
+        }
+
+        if (validLength == 0) {
+            // Not even the header made it to disk; createJournal() starts the file over
+            return;
+        }
+
+        journalChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        journalChannel.truncate(validLength);
+        journalChannel.position(validLength);
+    }
+
+    /**
+     * Create the journal file for the current generation.
+     *
+     * @throws IOException If the file could not be created
+     */
+    private void createJournal() throws IOException {
+        journalChannel = FileChannel.open(journalFile(generation).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(6);
+        header.putInt(JOURNAL_MAGIC);
+        header.putShort(FORMAT_VERSION);
+        header.flip();
+        journalChannel.write(header);
+    }
+
+    /**
+     * Close the journal file if it is open.
+     */
+    private void closeJournal() {
+        if (journalChannel != null) {
+            try {
+                journalChannel.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close class journal: " + e.getMessage());
+            }
+            journalChannel = null;
+        }
+    }
+
+    /**
+     * Assign the next class code to a class ID.
+     *
+     * @param classId The class ID
+     * @return The assigned code
+     * @throws IllegalStateException If all codes are in use
+     */
+    private int defineClass(String classId) {
+        if (classIds.size() >= MAX_CLASS_CODES) {
+            throw new IllegalStateException("Too many distinct class ids for the journal format");
+        }
+        int code = classIds.size();
+        classCodes.put(classId, code);
+        classIds.add(classId);
+        return code;
+    }
+
+    /**
+     * Estimate the bytes needed for class definitions in a batch.
+     *
+     * @param changes The batch of changes
+     * @return The maximum definition size
+     */
+    private int estimateDefinitionSize(Map<UUID, String> changes) {
+        int size = 0;
+        for (String classId : changes.values()) {
+            if (!classId.isEmpty() && !classCodes.containsKey(classId)) {
+                size += 4 + classId.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Binary search the snapshot for a player.
+     *
+     * @param mostSigBits The high half of the player's UUID
+     * @param leastSigBits The low half of the player's UUID
+     * @return The record index, or -1 if the player is not in the snapshot
+     */
+    private int findSnapshotRecord(long mostSigBits, long leastSigBits) {
+        int low = 0;
+        int high = snapshotRecordCount - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = snapshotRecordsOffset + mid * SNAPSHOT_RECORD_SIZE;
+
+            // Same ordering as UUID.compareTo
+            int compare = Long.compare(snapshot.getLong(position), mostSigBits);
+            if (compare == 0) {
+                compare = Long.compare(snapshot.getLong(position + 8), leastSigBits);
+            }
+
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the newest generation that has a complete snapshot.
+     *
+     * @return The generation number, or 0 if there is no snapshot
+     */
+    private long findLatestGeneration() {
+        long latest = 0;
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(baseName + ".") && name.endsWith(".snap"));
+        if (files != null) {
+            for (File file : files) {
+                long fileGeneration = parseGeneration(file.getName(), ".snap");
+                latest = Math.max(latest, fileGeneration);
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Delete snapshot and journal files from older generations.
+     */
+    private void deleteOldGenerations() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(baseName + "."));
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                // Left behind by an interrupted compaction
+                file.delete();
+                continue;
+            }
+
+            long fileGeneration = name.endsWith(".snap") ? parseGeneration(name, ".snap")
+                    : name.endsWith(".log") ? parseGeneration(name, ".log")
+                    : -1;
+
+            // A mapped snapshot cannot be deleted on some platforms; it is retried on the next start
+            if (fileGeneration >= 0 && fileGeneration < generation && !file.delete()) {
+                logger.fine("Could not delete old class data file " + name);
+            }
+        }
+    }
+
+    /**
+     * Parse the generation number from a journal or snapshot file name.
+     *
+     * @param name The file name
+     * @param suffix The file suffix
+     * @return The generation, or -1 if the name does not match
+     */
+    private long parseGeneration(String name, String suffix) {
+        try {
+            return Long.parseLong(name.substring(baseName.length() + 1, name.length() - suffix.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private File snapshotFile(long gen) {
+        return new File(directory, baseName + "." + gen + ".snap");
+    }
+
+    private File journalFile(long gen) {
+        return new File(directory, baseName + "." + gen + ".log");
+    }
+}
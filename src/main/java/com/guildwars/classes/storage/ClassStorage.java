@@ -1,27 +1,58 @@
 package com.guildwars.classes.storage;
 
 import com.guildwars.classes.GuildWarsClasses;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
  * Handles saving and loading player class data.
+ * <p>
+ * Changes are not written immediately. They are recorded as pending writes keyed by player,
+ * so repeated changes for the same player collapse into one, and a background thread flushes
+ * them to disk every {@code settings.save-interval} seconds.
+ * <p>
+ * The storage format is a {@link StorageBackend} chosen by {@code storage.type} in config.yml.
+ * Data from the old {@code classes.yml} file is imported once into an empty backend.
  */
 public class ClassStorage {
 
+    /**
+     * Marker stored in the pending write queue when a player's class has been removed.
+     */
+    private static final String REMOVED = "";
+    
+    private static final long DEFAULT_SAVE_INTERVAL_SECONDS = 300;
+    private static final long DEFAULT_COMPACT_THRESHOLD = 10000;
+    private static final int DEFAULT_SHARD_COUNT = 16;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
     private final GuildWarsClasses plugin;
-    private final File classesFile;
-    private FileConfiguration classesConfig;
+    private final StorageBackend backend;
+    private final long saveInterval;
+    
+    private final Map<UUID, String> pendingWrites = new ConcurrentHashMap<>();
+    private volatile Map<UUID, String> inFlightWrites = Map.of();
+    private final ScheduledExecutorService storageExecutor;
+    
+    private volatile long lastFlushNanos;
+    private volatile int lastFlushSize;
+    private volatile long totalFlushNanos;
+    private volatile long flushCount;
     
     /**
-     * Creates a new class storage.
+     * Creates a new class storage. Call {@link #openAsync()} before use.
      *
      * @param plugin The GuildWarsClasses plugin instance
      */
@@ -33,40 +64,91 @@ public class ClassStorage {
             plugin.getDataFolder().mkdirs();
         }
         
-        // Initialize files
-        classesFile = new File(plugin.getDataFolder(), "classes.yml");
+        backend = createBackend(plugin.getConfig().getString("storage.type", "journal"));
+        
+        long interval = plugin.getConfig().getLong("settings.save-interval", DEFAULT_SAVE_INTERVAL_SECONDS);
+        if (interval <= 0) {
+            plugin.getLogger().warning("Invalid settings.save-interval " + interval + ", using " + DEFAULT_SAVE_INTERVAL_SECONDS + " seconds.");
+            interval = DEFAULT_SAVE_INTERVAL_SECONDS;
+        }
+        saveInterval = interval;
         
-        // Load configuration
-        loadConfiguration();
+        storageExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GuildWarsClasses-Storage");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
     
     /**
-     * Load the configuration file.
+     * Open the configured backend on the storage thread and start the periodic flush.
+     *
+     * @return A future completed once the backend is open
      */
-    private void loadConfiguration() {
-        try {
-            // Create file if it doesn't exist
-            if (!classesFile.exists()) {
-                classesFile.createNewFile();
+    public CompletableFuture<Void> openAsync() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                backend.open();
+                importLegacyData();
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
             
-            // Load configuration
-            classesConfig = YamlConfiguration.loadConfiguration(classesFile);
+            plugin.getLogger().info("Class data opened using " + backend.getName() + " storage (" + backend.getStatus() + ").");
             
-            plugin.getLogger().info("YAML configuration loaded successfully.");
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to create YAML file", e);
+            // Flush pending writes periodically from now on
+            storageExecutor.scheduleWithFixedDelay(this::flushSafely, saveInterval, saveInterval, TimeUnit.SECONDS);
+        }, storageExecutor);
+    }
+    
+    /**
+     * Create the storage backend for a configured storage type.
+     *
+     * @param type The storage type from config.yml
+     * @return The storage backend
+     */
+    private StorageBackend createBackend(String type) {
+        switch (type.toLowerCase()) {
+            case "sqlite":
+                String fileName = plugin.getConfig().getString("storage.sqlite.file", "classes.db");
+                return new SqliteStorageBackend(new File(plugin.getDataFolder(), fileName));
+            case "journal":
+                return createJournalBackend();
+            default:
+                plugin.getLogger().warning("Unknown storage type '" + type + "', using journal storage.");
+                return createJournalBackend();
         }
     }
     
     /**
-     * Save the configuration file.
+     * Create the binary journal storage backend.
+     *
+     * @return The journal storage backend
      */
-    private void saveConfiguration() {
-        try {
-            classesConfig.save(classesFile);
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to save YAML file", e);
+    private StorageBackend createJournalBackend() {
+        int shardCount = plugin.getConfig().getInt("storage.journal.shards", DEFAULT_SHARD_COUNT);
+        long compactThreshold = Math.max(1, plugin.getConfig().getLong("storage.journal.compact-threshold", DEFAULT_COMPACT_THRESHOLD));
+        return new JournalStorageBackend(new File(plugin.getDataFolder(), "data"), shardCount, compactThreshold, plugin.getLogger());
+    }
+    
+    /**
+     * Import the old classes.yml file the first time an empty backend is used.
+     *
+     * @throws IOException If the imported data could not be written
+     */
+    private void importLegacyData() throws IOException {
+        LegacyYamlImporter importer = new LegacyYamlImporter(new File(plugin.getDataFolder(), "classes.yml"), plugin.getLogger());
+        if (!importer.hasLegacyData() || !backend.isEmpty()) {
+            return;
+        }
+        
+        Map<UUID, String> playerClasses = importer.read();
+        backend.importAll(playerClasses);
+        
+        if (importer.markImported()) {
+            plugin.getLogger().info("Migrated " + playerClasses.size() + " player classes from classes.yml.");
+        } else {
+            plugin.getLogger().warning("Migrated " + playerClasses.size() + " player classes, but could not rename classes.yml.");
         }
     }
     
@@ -74,54 +156,237 @@ public class ClassStorage {
      * Load all player classes from storage.
      *
      * @return A map of player UUIDs to class IDs
+     * @throws IOException If the backend could not be read
      */
-    public Map<UUID, String> loadPlayerClasses() {
-        Map<UUID, String> playerClasses = new HashMap<>();
+    public Map<UUID, String> loadPlayerClasses() throws IOException {
+        Map<UUID, String> playerClasses = backend.loadAll();
         
-        if (classesConfig.contains("players")) {
-            for (String uuidStr : classesConfig.getConfigurationSection("players").getKeys(false)) {
-                try {
-                    UUID playerId = UUID.fromString(uuidStr);
-                    String classId = classesConfig.getString("players." + uuidStr);
-                    
-                    if (classId != null && !classId.isEmpty()) {
-                        playerClasses.put(playerId, classId);
-                    }
-                } catch (IllegalArgumentException e) {
-                    plugin.getLogger().warning("Invalid UUID in classes.yml: " + uuidStr);
-                }
+        // Writes that have not been flushed yet take precedence over the file, newest last
+        applyWrites(playerClasses, inFlightWrites);
+        applyWrites(playerClasses, pendingWrites);
+        
+        return playerClasses;
+    }
+    
+    /**
+     * Apply queued changes to a set of loaded player classes.
+     *
+     * @param playerClasses The loaded player classes
+     * @param writes Player UUIDs mapped to their new class ID, or an empty string for a removal
+     */
+    private static void applyWrites(Map<UUID, String> playerClasses, Map<UUID, String> writes) {
+        for (Map.Entry<UUID, String> entry : writes.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                playerClasses.remove(entry.getKey());
+            } else {
+                playerClasses.put(entry.getKey(), entry.getValue());
             }
         }
+    }
+    
+    /**
+     * Load a single player's class from storage.
+     * Blocks while the backend is read, so this should not be called on the main thread.
+     *
+     * @param playerId The UUID of the player
+     * @return The class ID, or null if the player has none
+     * @throws IOException If the backend could not be read
+     */
+    public String loadPlayerClass(UUID playerId) throws IOException {
+        // A write that has not been flushed yet is newer than the backend, and one being
+        // flushed stays visible here until the backend has it
+        String pending = pendingWrites.get(playerId);
+        if (pending == null) {
+            pending = inFlightWrites.get(playerId);
+        }
+        if (pending != null) {
+            return pending.isEmpty() ? null : pending;
+        }
         
-        return playerClasses;
+        return backend.load(playerId);
+    }
+    
+    /**
+     * Get the storage thread, for other file reads that should stay off the main thread.
+     *
+     * @return The storage thread's executor
+     */
+    public Executor getExecutor() {
+        return storageExecutor;
+    }
+    
+    /**
+     * Load a single player's class from storage on the storage thread.
+     *
+     * @param playerId The UUID of the player
+     * @return A future completed with the class ID, or null if the player has none
+     */
+    public CompletableFuture<String> loadPlayerClassAsync(UUID playerId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return loadPlayerClass(playerId);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, storageExecutor);
     }
     
     /**
      * Save a player's class to storage.
+     * The change is queued and written by the next flush.
      *
      * @param playerId The UUID of the player
      * @param classId The ID of the class
      */
     public void savePlayerClass(UUID playerId, String classId) {
-        classesConfig.set("players." + playerId.toString(), classId);
-        saveConfiguration();
+        pendingWrites.put(playerId, classId);
     }
     
     /**
      * Remove a player's class from storage.
+     * The change is queued and written by the next flush.
      *
      * @param playerId The UUID of the player
      */
     public void removePlayerClass(UUID playerId) {
-        classesConfig.set("players." + playerId.toString(), null);
-        saveConfiguration();
+        pendingWrites.put(playerId, REMOVED);
+    }
+    
+    /**
+     * Write all pending changes to the backend in one batch.
+     * Blocks while another flush is in progress.
+     */
+    public synchronized void flush() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        
+        long start = System.nanoTime();
+        Map<UUID, String> batch = new HashMap<>(pendingWrites);
+        
+        // Publish the batch to readers before it leaves the pending writes
+        inFlightWrites = batch;
+        for (Map.Entry<UUID, String> entry : batch.entrySet()) {
+            // Only drop the entry if it was not changed again while we were flushing
+            pendingWrites.remove(entry.getKey(), entry.getValue());
+        }
+        
+        try {
+            backend.write(batch);
+        } catch (IOException e) {
+            // Requeue the batch unless the player has changed class again since
+            for (Map.Entry<UUID, String> entry : batch.entrySet()) {
+                pendingWrites.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            plugin.getLogger().log(Level.SEVERE, "Failed to write class data, will retry on the next flush", e);
+            return;
+        } finally {
+            inFlightWrites = Map.of();
+        }
+        
+        long elapsed = System.nanoTime() - start;
+        lastFlushNanos = elapsed;
+        lastFlushSize = batch.size();
+        totalFlushNanos += elapsed;
+        flushCount++;
+        
+        try {
+            backend.maintain();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Class storage maintenance failed", e);
+        }
+    }
+    
+    /**
+     * Flush pending changes, logging instead of propagating any failure so the
+     * scheduled flush keeps running.
+     */
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to flush class data", e);
+        }
     }
     
     /**
      * Save all data to storage.
      */
     public void saveData() {
-        saveConfiguration();
-        plugin.getLogger().info("All class data saved to YAML file.");
+        flush();
+        plugin.getLogger().info("All class data saved.");
+    }
+    
+    /**
+     * Stop the background flush thread and write any remaining changes.
+     * Blocks until the data is on disk.
+     */
+    public void shutdown() {
+        storageExecutor.shutdown();
+        try {
+            if (!storageExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for the storage thread to finish.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        saveData();
+        backend.close();
+    }
+    
+    /**
+     * Get the number of players with changes waiting to be flushed.
+     *
+     * @return The pending write queue depth
+     */
+    public int getQueueDepth() {
+        return pendingWrites.size();
+    }
+    
+    /**
+     * Get the duration of the most recent flush.
+     *
+     * @return The last flush latency in milliseconds
+     */
+    public double getLastFlushMillis() {
+        return lastFlushNanos / 1_000_000.0;
+    }
+    
+    /**
+     * Get the number of players written by the most recent flush.
+     *
+     * @return The size of the last flush
+     */
+    public int getLastFlushSize() {
+        return lastFlushSize;
+    }
+    
+    /**
+     * Get the average duration of all flushes since startup.
+     *
+     * @return The average flush latency in milliseconds
+     */
+    public double getAverageFlushMillis() {
+        long count = flushCount;
+        return count == 0 ? 0 : totalFlushNanos / (double) count / 1_000_000.0;
+    }
+    
+    /**
+     * Get the storage backend in use.
+     *
+     * @return The storage backend
+     */
+    public StorageBackend getBackend() {
+        return backend;
+    }
+    
+    /**
+     * Get the number of flushes performed since startup.
+     *
+     * @return The flush count
+     */
+    public long getFlushCount() {
+        return flushCount;
     }
 }
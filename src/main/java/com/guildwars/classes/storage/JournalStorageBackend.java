@@ -0,0 +1,326 @@
+package com.guildwars.classes.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Storage backend using the binary {@link ClassJournal} format.
+ * <p>
+ * Players are split across a power-of-two number of shards by the top bits of their UUID,
+ * each with its own snapshot and journal. Shards are opened and read in parallel, and
+ * only shards whose journal has grown are compacted.
+ * <p>
+ * Files live in {@code data/shards-<count>/}. If the shard count in config.yml changes,
+ * or data from the unsharded layout is found, it is moved into the new layout on open.
+ */
+public class JournalStorageBackend implements StorageBackend {
+
+    private static final int MAX_SHARDS = 256;
+
+    // Written into the shard directory once older layouts have been moved into it
+    private static final String MIGRATED_MARKER = ".migrated";
+
+    private final File directory;
+    private final long compactThreshold;
+    private final Logger logger;
+    private final int shardBits;
+    private final ClassJournal[] shards;
+
+    /**
+     * Creates a new journal storage backend.
+     *
+     * @param directory The directory the journal files are kept in
+     * @param shardCount The number of shards, rounded up to a power of two
+     * @param compactThreshold The number of journal records in a shard that triggers its compaction
+     * @param logger The logger to report to
+     */
+    public JournalStorageBackend(File directory, int shardCount, long compactThreshold, Logger logger) {
+        this.directory = directory;
+        this.compactThreshold = compactThreshold;
+        this.logger = logger;
+
+        int count = Math.min(MAX_SHARDS, Math.max(1, Integer.highestOneBit(Math.max(1, shardCount) * 2 - 1)));
+        this.shardBits = Integer.numberOfTrailingZeros(count);
+        this.shards = new ClassJournal[count];
+
+        File shardDirectory = shardDirectory(count);
+        for (int i = 0; i < count; i++) {
+            shards[i] = new ClassJournal(shardDirectory, String.format("classes-%02x", i), logger);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "journal";
+    }
+
+    @Override
+    public void open() throws IOException {
+        long start = System.nanoTime();
+        long[] shardNanos = new long[shards.length];
+
+        runOnShards(shard -> {
+            long shardStart = System.nanoTime();
+            shards[shard].open();
+            shardNanos[shard] = System.nanoTime() - shardStart;
+        });
+
+        StringBuilder timings = new StringBuilder();
+        for (int i = 0; i < shards.length; i++) {
+            timings.append(i == 0 ? "" : ", ").append(String.format("%02x=%.1f", i, shardNanos[i] / 1_000_000.0));
+        }
+        logger.info(String.format("Opened %d class data shards in %.1f ms (per shard ms: %s).",
+                shards.length, (System.nanoTime() - start) / 1_000_000.0, timings));
+
+        migrateOldLayouts();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (ClassJournal shard : shards) {
+            if (!shard.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String load(UUID playerId) {
+        return shardFor(playerId).get(playerId);
+    }
+
+    @Override
+    public Map<UUID, String> loadAll() throws IOException {
+        List<Map<UUID, String>> shardData = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            shardData.add(null);
+        }
+
+        runOnShards(shard -> shardData.set(shard, shards[shard].loadAll()));
+
+        int total = 0;
+        for (Map<UUID, String> data : shardData) {
+            total += data.size();
+        }
+
+        Map<UUID, String> playerClasses = new HashMap<>(Math.max(16, total * 4 / 3));
+        for (Map<UUID, String> data : shardData) {
+            playerClasses.putAll(data);
+        }
+        return playerClasses;
+    }
+
+    @Override
+    public void write(Map<UUID, String> changes) throws IOException {
+        List<Map<UUID, String>> partitions = partition(changes);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].append(partitions.get(i));
+        }
+    }
+
+    @Override
+    public void importAll(Map<UUID, String> playerClasses) throws IOException {
+        List<Map<UUID, String>> partitions = partition(playerClasses);
+        runOnShards(shard -> shards[shard].importAll(partitions.get(shard)));
+    }
+
+    @Override
+    public void maintain() throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            ClassJournal shard = shards[i];
+            if (shard.getJournalRecordCount() < compactThreshold) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            shard.compact();
+            logger.info(String.format("Compacted class data shard %02x (%d players) in %.1f ms.",
+                    i, shard.getSnapshotRecordCount(), (System.nanoTime() - start) / 1_000_000.0));
+        }
+    }
+
+    @Override
+    public String getStatus() {
+        long players = 0;
+        long journalRecords = 0;
+        for (ClassJournal shard : shards) {
+            players += shard.getSnapshotRecordCount();
+            journalRecords += shard.getJournalRecordCount();
+        }
+        return shards.length + " shards, " + players + " players in snapshots, " + journalRecords + " journal records";
+    }
+
+    @Override
+    public void close() {
+        for (ClassJournal shard : shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Get the shard a player belongs to.
+     *
+     * @param playerId The UUID of the player
+     * @return The shard's journal
+     */
+    private ClassJournal shardFor(UUID playerId) {
+        return shards[shardIndex(playerId)];
+    }
+
+    /**
+     * Get the shard index for a player from the top bits of their UUID.
+     * Shards therefore hold contiguous, sorted UUID ranges.
+     *
+     * @param playerId The UUID of the player
+     * @return The shard index
+     */
+    private int shardIndex(UUID playerId) {
+        return shardBits == 0 ? 0 : (int) (playerId.getMostSignificantBits() >>> (64 - shardBits));
+    }
+
+    /**
+     * Split a set of player classes by shard.
+     *
+     * @param playerClasses A map of player UUIDs to class IDs
+     * @return One map per shard
+     */
+    private List<Map<UUID, String>> partition(Map<UUID, String> playerClasses) {
+        List<Map<UUID, String>> partitions = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            partitions.add(new HashMap<>());
+        }
+        for (Map.Entry<UUID, String> entry : playerClasses.entrySet()) {
+            partitions.get(shardIndex(entry.getKey())).put(entry.getKey(), entry.getValue());
+        }
+        return partitions;
+    }
+
+    /**
+     * Move data written with a different shard count, or by the unsharded layout,
+     * into the current shards. Runs until a migration has completed; a marker file is
+     * written only once every shard has been imported, so a migration that failed part
+     * way is run again in full on the next start. The old files are kept until then.
+     *
+     * @throws IOException If the old data could not be read or the new data written
+     */
+    private void migrateOldLayouts() throws IOException {
+        File marker = new File(shardDirectory(shards.length), MIGRATED_MARKER);
+        if (marker.exists()) {
+            return;
+        }
+
+        String currentName = shardDirectory(shards.length).getName();
+        File[] oldDirectories = directory.listFiles((dir, name) -> name.startsWith("shards-") && !name.equals(currentName));
+        Map<UUID, String> playerClasses = new HashMap<>();
+        List<ClassJournal> oldJournals = new ArrayList<>();
+
+        // The single-file layout used before sharding
+        ClassJournal unsharded = new ClassJournal(directory, "classes", logger);
+        unsharded.open();
+        if (!unsharded.isEmpty()) {
+            playerClasses.putAll(unsharded.loadAll());
+        }
+        oldJournals.add(unsharded);
+
+        if (oldDirectories != null) {
+            for (File oldDirectory : oldDirectories) {
+                int oldCount;
+                try {
+                    oldCount = Integer.parseInt(oldDirectory.getName().substring("shards-".length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                for (int i = 0; i < oldCount; i++) {
+                    ClassJournal oldShard = new ClassJournal(oldDirectory, String.format("classes-%02x", i), logger);
+                    oldShard.open();
+                    playerClasses.putAll(oldShard.loadAll());
+                    oldJournals.add(oldShard);
+                }
+            }
+        }
+
+        // Each shard's import replaces its contents, so a retry after a failure starts clean
+        if (!playerClasses.isEmpty()) {
+            importAll(playerClasses);
+            logger.info("Moved " + playerClasses.size() + " player classes into " + shards.length + " shards.");
+        }
+
+        marker.getParentFile().mkdirs();
+        if (!marker.createNewFile() && !marker.exists()) {
+            throw new IOException("Could not write " + marker);
+        }
+
+        // The data is safe in the new shards, so the old files can go
+        for (ClassJournal oldJournal : oldJournals) {
+            oldJournal.delete();
+        }
+        if (oldDirectories != null) {
+            for (File oldDirectory : oldDirectories) {
+                new File(oldDirectory, MIGRATED_MARKER).delete();
+                oldDirectory.delete();
+            }
+        }
+    }
+
+    /**
+     * Run a task for every shard in parallel and wait for all of them.
+     *
+     * @param task The task, given the shard index
+     * @throws IOException If any shard task failed
+     */
+    private void runOnShards(ShardTask task) throws IOException {
+        if (shards.length == 1) {
+            task.run(0);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(shards.length, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>(shards.length);
+            for (int i = 0; i < shards.length; i++) {
+                int shard = i;
+                tasks.add(() -> {
+                    task.run(shard);
+                    return null;
+                });
+            }
+
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while accessing class data shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to access class data shards", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private File shardDirectory(int count) {
+        return new File(directory, "shards-" + count);
+    }
+
+    /**
+     * A task run for a single shard.
+     */
+    @FunctionalInterface
+    private interface ShardTask {
+        void run(int shard) throws IOException;
+    }
+}
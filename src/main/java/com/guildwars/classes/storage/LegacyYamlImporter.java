@@ -0,0 +1,79 @@
+package com.guildwars.classes.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Reads player classes from the legacy {@code classes.yml} file so they can be
+ * imported into the current storage format.
+ */
+public class LegacyYamlImporter {
+
+    private final File classesFile;
+    private final Logger logger;
+    
+    /**
+     * Creates a new legacy YAML importer.
+     *
+     * @param classesFile The legacy classes.yml file
+     * @param logger The logger to report problems to
+     */
+    public LegacyYamlImporter(File classesFile, Logger logger) {
+        this.classesFile = classesFile;
+        this.logger = logger;
+    }
+    
+    /**
+     * Check whether there is legacy data to import.
+     *
+     * @return True if the legacy file exists
+     */
+    public boolean hasLegacyData() {
+        return classesFile.isFile();
+    }
+    
+    /**
+     * Read all player classes from the legacy file.
+     *
+     * @return A map of player UUIDs to class IDs
+     */
+    public Map<UUID, String> read() {
+        Map<UUID, String> playerClasses = new HashMap<>();
+        
+        ConfigurationSection players = YamlConfiguration.loadConfiguration(classesFile).getConfigurationSection("players");
+        if (players == null) {
+            return playerClasses;
+        }
+        
+        for (String uuidStr : players.getKeys(false)) {
+            try {
+                UUID playerId = UUID.fromString(uuidStr);
+                String classId = players.getString(uuidStr);
+                
+                if (classId != null && !classId.isEmpty()) {
+                    playerClasses.put(playerId, classId);
+                }
+            } catch (IllegalArgumentException e) {
+                logger.warning("Invalid UUID in " + classesFile.getName() + ": " + uuidStr);
+            }
+        }
+        
+        return playerClasses;
+    }
+    
+    /**
+     * Rename the legacy file so it is not imported again.
+     *
+     * @return True if the file was renamed
+     */
+    public boolean markImported() {
+        File migrated = new File(classesFile.getParentFile(), classesFile.getName() + ".migrated");
+        return classesFile.renameTo(migrated);
+    }
+}
@@ -0,0 +1,251 @@
+package com.guildwars.classes.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Storage backend using an embedded SQLite database file.
+ * <p>
+ * Uses the SQLite driver bundled with the server. One connection is opened and reused for
+ * all queries. Players are keyed by their 16-byte UUID as the table's primary key, so
+ * single-player reads and writes are index lookups.
+ */
+public class SqliteStorageBackend implements StorageBackend {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS player_classes ("
+            + "uuid BLOB NOT NULL PRIMARY KEY, "
+            + "class_id TEXT NOT NULL"
+            + ") WITHOUT ROWID";
+    private static final String SELECT_ONE = "SELECT class_id FROM player_classes WHERE uuid = ?";
+    private static final String SELECT_ALL = "SELECT uuid, class_id FROM player_classes";
+    private static final String SELECT_ANY = "SELECT 1 FROM player_classes LIMIT 1";
+    private static final String UPSERT = "INSERT INTO player_classes (uuid, class_id) VALUES (?, ?) "
+            + "ON CONFLICT(uuid) DO UPDATE SET class_id = excluded.class_id";
+    private static final String DELETE = "DELETE FROM player_classes WHERE uuid = ?";
+    private static final String DELETE_ALL = "DELETE FROM player_classes";
+    
+    private final File databaseFile;
+    private Connection connection;
+    private PreparedStatement selectOne;
+    private PreparedStatement upsert;
+    private PreparedStatement delete;
+    
+    /**
+     * Creates a new SQLite storage backend.
+     *
+     * @param databaseFile The database file
+     */
+    public SqliteStorageBackend(File databaseFile) {
+        this.databaseFile = databaseFile;
+    }
+    
+    @Override
+    public String getName() {
+        return "sqlite";
+    }
+    
+    @Override
+    public synchronized void open() throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("The SQLite driver is not available on this server", e);
+        }
+        
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+            
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=NORMAL");
+                statement.execute(CREATE_TABLE);
+            }
+            
+            selectOne = connection.prepareStatement(SELECT_ONE);
+            upsert = connection.prepareStatement(UPSERT);
+            delete = connection.prepareStatement(DELETE);
+        } catch (SQLException e) {
+            close();
+            throw new IOException("Failed to open " + databaseFile.getName(), e);
+        }
+    }
+    
+    @Override
+    public synchronized boolean isEmpty() throws IOException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(SELECT_ANY)) {
+            return !result.next();
+        } catch (SQLException e) {
+            throw new IOException("Failed to read " + databaseFile.getName(), e);
+        }
+    }
+    
+    @Override
+    public synchronized String load(UUID playerId) throws IOException {
+        try {
+            selectOne.setBytes(1, toBytes(playerId));
+            try (ResultSet result = selectOne.executeQuery()) {
+                return result.next() ? result.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read " + databaseFile.getName(), e);
+        }
+    }
+    
+    @Override
+    public synchronized Map<UUID, String> loadAll() throws IOException {
+        Map<UUID, String> playerClasses = new HashMap<>();
+        
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(SELECT_ALL)) {
+            while (result.next()) {
+                playerClasses.put(fromBytes(result.getBytes(1)), result.getString(2));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read " + databaseFile.getName(), e);
+        }
+        
+        return playerClasses;
+    }
+    
+    @Override
+    public synchronized void write(Map<UUID, String> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        
+        try {
+            connection.setAutoCommit(false);
+            writeBatch(changes);
+            connection.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("Failed to write " + databaseFile.getName(), e);
+        } finally {
+            resetAutoCommit();
+        }
+    }
+    
+    @Override
+    public synchronized void importAll(Map<UUID, String> playerClasses) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(DELETE_ALL);
+            }
+            writeBatch(playerClasses);
+            connection.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("Failed to import into " + databaseFile.getName(), e);
+        } finally {
+            resetAutoCommit();
+        }
+    }
+    
+    @Override
+    public String getStatus() {
+        return databaseFile.getName();
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Nothing left to do with a connection that won't close
+            }
+            connection = null;
+        }
+    }
+    
+    /**
+     * Add a set of changes to the prepared upsert and delete batches and execute them.
+     *
+     * @param changes Player UUIDs mapped to their new class ID, or an empty string for a removal
+     * @throws SQLException If a statement failed
+     */
+    private void writeBatch(Map<UUID, String> changes) throws SQLException {
+        boolean hasUpserts = false;
+        boolean hasDeletes = false;
+        
+        for (Map.Entry<UUID, String> entry : changes.entrySet()) {
+            byte[] playerId = toBytes(entry.getKey());
+            
+            if (entry.getValue().isEmpty()) {
+                delete.setBytes(1, playerId);
+                delete.addBatch();
+                hasDeletes = true;
+            } else {
+                upsert.setBytes(1, playerId);
+                upsert.setString(2, entry.getValue());
+                upsert.addBatch();
+                hasUpserts = true;
+            }
+        }
+        
+        if (hasUpserts) {
+            upsert.executeBatch();
+        }
+        if (hasDeletes) {
+            delete.executeBatch();
+        }
+    }
+    
+    /**
+     * Roll back the current transaction, ignoring failures.
+     */
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException ignored) {
+            // The original error is more useful than this one
+        }
+    }
+    
+    /**
+     * Return the connection to auto-commit mode, ignoring failures.
+     */
+    private void resetAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ignored) {
+            // The next write sets it again
+        }
+    }
+    
+    /**
+     * Convert a UUID to its 16-byte big-endian form.
+     *
+     * @param playerId The UUID
+     * @return The UUID bytes
+     */
+    private static byte[] toBytes(UUID playerId) {
+        return ByteBuffer.allocate(16)
+                .putLong(playerId.getMostSignificantBits())
+                .putLong(playerId.getLeastSignificantBits())
+                .array();
+    }
+    
+    /**
+     * Convert 16 big-endian bytes back to a UUID.
+     *
+     * @param bytes The UUID bytes
+     * @return The UUID
+     */
+    private static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,91 @@
+package com.guildwars.classes.storage;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A storage format for player class data.
+ * <p>
+ * Backends are used through {@link ClassStorage}, which queues changes and hands them
+ * to {@link #write(Map)} in batches from its storage thread. Reads may come from any thread,
+ * so implementations must be thread-safe.
+ */
+public interface StorageBackend {
+    
+    /**
+     * Get the name of this backend as used in config.yml.
+     *
+     * @return The backend name
+     */
+    String getName();
+    
+    /**
+     * Open the backend, creating its files if needed.
+     *
+     * @throws IOException If the backend could not be opened
+     */
+    void open() throws IOException;
+    
+    /**
+     * Check whether this backend holds any data.
+     *
+     * @return True if nothing has been stored yet
+     * @throws IOException If the backend could not be read
+     */
+    boolean isEmpty() throws IOException;
+    
+    /**
+     * Load a single player's class.
+     *
+     * @param playerId The UUID of the player
+     * @return The class ID, or null if the player has none
+     * @throws IOException If the backend could not be read
+     */
+    String load(UUID playerId) throws IOException;
+    
+    /**
+     * Load every stored player class.
+     *
+     * @return A map of player UUIDs to class IDs
+     * @throws IOException If the backend could not be read
+     */
+    Map<UUID, String> loadAll() throws IOException;
+    
+    /**
+     * Write a batch of changes. A batch that failed is retried on the next flush,
+     * so writing the same changes twice must be safe.
+     *
+     * @param changes Player UUIDs mapped to their new class ID, or an empty string for a removal
+     * @throws IOException If the changes could not be written
+     */
+    void write(Map<UUID, String> changes) throws IOException;
+    
+    /**
+     * Replace all stored data. Used to import data from other formats.
+     *
+     * @param playerClasses A map of player UUIDs to class IDs
+     * @throws IOException If the data could not be written
+     */
+    void importAll(Map<UUID, String> playerClasses) throws IOException;
+    
+    /**
+     * Run background maintenance such as compaction. Called on the storage thread after each flush.
+     *
+     * @throws IOException If maintenance failed
+     */
+    default void maintain() throws IOException {
+    }
+    
+    /**
+     * Get a short description of the backend's state for the stats command.
+     *
+     * @return The status text
+     */
+    String getStatus();
+    
+    /**
+     * Close the backend and release its files or connections.
+     */
+    void close();
+}
@@ -0,0 +1,154 @@
+package com.guildwars.classes.managers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Reports how much heap player classes and cooldowns take, in the layout used before
+ * {@link PlayerClassIndex} and in the current one.
+ * <p>
+ * Classes alone are compared first: a {@code ConcurrentHashMap<UUID, PlayerClass>}
+ * against a {@link PlayerClassIndex}. Then every player also gets two running cooldowns.
+ * The old layout kept their deadlines in a {@code HashMap<UUID, Long>} per ability, and
+ * the current one keeps them in the {@link CooldownService}. Each layout is
+ * filled with random UUIDs that nothing else holds on to, and the heap is measured
+ * after a full collection before and after.
+ * <p>
+ * Run with enough heap for the largest count, for example:
+ * {@code java -Xmx4g -cp target/classes:target/test-classes com.guildwars.classes.managers.PlayerClassIndexMemoryReport 100000 1000000}
+ */
+public final class PlayerClassIndexMemoryReport {
+
+    private static final int COOLDOWN_TICKS = 20 * 60;
+
+    // Shared by all entries, as the class objects are in the plugin
+    private static final Object PLAYER_CLASS = new Object();
+
+    private PlayerClassIndexMemoryReport() {
+    }
+
+    /**
+     * Run the report.
+     *
+     * @param args The player counts to measure
+     */
+    public static void main(String[] args) {
+        int[] counts = args.length > 0 ? new int[args.length] : new int[] {100_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%-22s %10s %20s %20s%n", "", "players", "old layout", "current layout");
+        for (int count : counts) {
+            report("classes", count,
+                    measure(count, players -> fillOldLayout(players, false)),
+                    measure(count, players -> fillIndex(players, false)));
+            report("classes and cooldowns", count,
+                    measure(count, players -> fillOldLayout(players, true)),
+                    measure(count, players -> fillIndex(players, true)));
+        }
+    }
+
+    /**
+     * Print one line of the report.
+     *
+     * @param label What was measured
+     * @param count The number of players
+     * @param oldBytes The bytes held by the old layout
+     * @param currentBytes The bytes held by the current layout
+     */
+    private static void report(String label, int count, long oldBytes, long currentBytes) {
+        System.out.printf("%-22s %10d %9.1f MB (%3d B) %9.1f MB (%3d B)%n", label, count,
+                oldBytes / 1e6, oldBytes / count, currentBytes / 1e6, currentBytes / count);
+    }
+
+    /**
+     * Measure the heap a layout holds.
+     *
+     * @param count The number of players
+     * @param fill Builds the layout for the given number of players
+     * @return The bytes held
+     */
+    private static long measure(int count, IntFunction<Object> fill) {
+        long before = usedHeap();
+        Object layout = fill.apply(count);
+        long after = usedHeap();
+
+        // Keep the layout reachable until it was measured
+        if (layout.hashCode() == 0) {
+            System.out.println();
+        }
+        return after - before;
+    }
+
+    /**
+     * Fill the layout used before the index.
+     *
+     * @param count The number of players
+     * @param withCooldowns Whether to start two cooldowns per player
+     * @return The maps holding the players
+     */
+    private static Object fillOldLayout(int count, boolean withCooldowns) {
+        Map<UUID, Object> classes = new ConcurrentHashMap<>();
+        Map<UUID, Long> primaryCooldowns = new HashMap<>();
+        Map<UUID, Long> secondaryCooldowns = new HashMap<>();
+        Random random = new Random(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            UUID playerId = new UUID(random.nextLong(), random.nextLong());
+            classes.put(playerId, PLAYER_CLASS);
+            if (!withCooldowns) {
+                continue;
+            }
+            primaryCooldowns.put(playerId, now + COOLDOWN_TICKS * 50L);
+            secondaryCooldowns.put(playerId, now + COOLDOWN_TICKS * 50L);
+        }
+        return new Object[] {classes, primaryCooldowns, secondaryCooldowns};
+    }
+
+    /**
+     * Fill the current layout.
+     *
+     * @param count The number of players
+     * @param withCooldowns Whether to start two cooldowns per player
+     * @return The index and cooldown service holding the players
+     */
+    private static Object fillIndex(int count, boolean withCooldowns) {
+        PlayerClassIndex index = new PlayerClassIndex();
+        CooldownService cooldowns = new CooldownService((playerId, ability) -> { });
+        Random random = new Random(count);
+        for (int i = 0; i < count; i++) {
+            UUID playerId = new UUID(random.nextLong(), random.nextLong());
+            index.setOrdinal(playerId, 0);
+            if (!withCooldowns) {
+                continue;
+            }
+            cooldowns.setCooldown(playerId, 0, COOLDOWN_TICKS);
+            cooldowns.setCooldown(playerId, 1, COOLDOWN_TICKS);
+        }
+        return new Object[] {index, cooldowns};
+    }
+
+    /**
+     * Get the heap in use after collecting garbage until it stops shrinking.
+     *
+     * @return The bytes in use
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) {
+                return current;
+            }
+            used = current;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,223 @@
+package com.guildwars.classes.model;
+
+import com.guildwars.classes.managers.CooldownService;
+import com.guildwars.classes.managers.PlayerGrid;
+import com.guildwars.classes.managers.SessionRegistry;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.util.BoundingBox;
+import org.bukkit.util.Vector;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Measures the cost of finding Healing Beam targets, with the old per-step scan and with
+ * {@link BeamQuery}.
+ * <p>
+ * A caster stands among 100 entities spread within 20 blocks and casts a 40 block beam.
+ * The old way sampled the beam every half block, cloning a location and a vector and
+ * asking the world for the entities within a block of each sample. The world here answers
+ * like the server does once it has found the chunks: it tests every nearby entity's
+ * hitbox and returns a new list. The chunk walk the server does first is not counted, so
+ * the old way is cheaper here than on a real server. The new way is one query on a
+ * {@link PlayerGrid} holding the players among the entities. Particles, healing and
+ * messages cost the same either way and are left out.
+ * <p>
+ * Run with the test classpath, which includes the Paper API:
+ * {@code java -cp target/classes:target/test-classes:<paper-api.jar> com.guildwars.classes.model.BeamQueryBenchmark [entities] [players]}
+ */
+public final class BeamQueryBenchmark {
+
+    private static final double BEAM_LENGTH = 40;
+    private static final double BEAM_STEP = 0.5;
+    private static final double BEAM_RADIUS = 1.0;
+    private static final double SPREAD = 20;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int CASTS_PER_ROUND = 20_000;
+
+    private BeamQueryBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of entities near the caster, and how many of them are players
+     */
+    public static void main(String[] args) {
+        int entityCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int playerCount = args.length > 1 ? Integer.parseInt(args[1]) : entityCount;
+
+        // Place the entities around the caster, the first ones being players
+        Random random = new Random(42);
+        UUID worldId = UUID.randomUUID();
+        List<Entity> entities = new ArrayList<>();
+        World world = world(worldId, entities);
+        for (int i = 0; i < entityCount; i++) {
+            Location location = new Location(world,
+                    (random.nextDouble() * 2 - 1) * SPREAD, 64, (random.nextDouble() * 2 - 1) * SPREAD);
+            entities.add(entity(i < playerCount, location));
+        }
+        Player caster = (Player) entity(true, new Location(world, 0, 64, 0, -70, 0));
+        entities.add(caster);
+
+        // Fill the grid the way joins and moves do
+        SessionRegistry sessions = new SessionRegistry(new CooldownService((playerId, ability) -> { }));
+        PlayerGrid grid = new PlayerGrid();
+        for (Entity entity : entities) {
+            if (entity instanceof Player player) {
+                grid.update(sessions.open(player), player.getLocation());
+            }
+        }
+
+        Location eye = caster.getLocation().add(0, 1.62, 0);
+        Vector direction = caster.getLocation().getDirection();
+        System.out.printf("%d entities (%d players), %.0f block beam, %d hit by the beam%n",
+                entityCount, playerCount, BEAM_LENGTH, BeamQuery.findPlayers(grid, caster, eye, direction, BEAM_LENGTH, BEAM_RADIUS).size());
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            perStepScan(caster, eye, direction);
+            sweptQuery(grid, caster, eye, direction);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.printf("round %d: per-step scan %.2f us/cast, swept query %.2f us/cast%n", round + 1,
+                    perStepScan(caster, eye, direction), sweptQuery(grid, caster, eye, direction));
+        }
+    }
+
+    /**
+     * Find targets the way Healing Beam did before {@link BeamQuery}.
+     *
+     * @param caster The caster
+     * @param eye Where the beam starts
+     * @param direction The direction of the beam
+     * @return The time per cast in microseconds
+     */
+    private static double perStepScan(Player caster, Location eye, Vector direction) {
+        int steps = (int) (BEAM_LENGTH / BEAM_STEP);
+        long found = 0;
+        long start = System.nanoTime();
+        for (int cast = 0; cast < CASTS_PER_ROUND; cast++) {
+            for (int i = 0; i < steps; i++) {
+                Location sample = eye.clone().add(direction.clone().multiply(BEAM_STEP * i));
+                for (Entity entity : caster.getWorld().getNearbyEntities(sample, 1, 1, 1)) {
+                    if (entity instanceof Player) {
+                        found++;
+                    }
+                }
+            }
+        }
+        return report(start, found);
+    }
+
+    /**
+     * Find targets with one {@link BeamQuery}.
+     *
+     * @param grid The grid of players
+     * @param caster The caster
+     * @param eye Where the beam starts
+     * @param direction The direction of the beam
+     * @return The time per cast in microseconds
+     */
+    private static double sweptQuery(PlayerGrid grid, Player caster, Location eye, Vector direction) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int cast = 0; cast < CASTS_PER_ROUND; cast++) {
+            found += BeamQuery.findPlayers(grid, caster, eye, direction, BEAM_LENGTH, BEAM_RADIUS).size();
+        }
+        return report(start, found);
+    }
+
+    /**
+     * Turn the time of a round into the time per cast.
+     *
+     * @param start When the round started, in {@link System#nanoTime()} units
+     * @param found The number of targets found, kept so the work is not optimized away
+     * @return The time per cast in microseconds
+     */
+    private static double report(long start, long found) {
+        double micros = (System.nanoTime() - start) / 1_000.0 / CASTS_PER_ROUND;
+        if (found < 0) {
+            System.out.println(found);
+        }
+        return micros;
+    }
+
+    /**
+     * Create a world that answers entity lookups from a list.
+     *
+     * @param worldId The world's UUID
+     * @param entities The entities in the world
+     * @return The world
+     */
+    private static World world(UUID worldId, List<Entity> entities) {
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] {World.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getUID":
+                    return worldId;
+                case "getNearbyEntities": {
+                    Location center = (Location) args[0];
+                    double x = (double) args[1];
+                    double y = (double) args[2];
+                    double z = (double) args[3];
+                    BoundingBox area = new BoundingBox(center.getX() - x, center.getY() - y, center.getZ() - z,
+                            center.getX() + x, center.getY() + y, center.getZ() + z);
+                    Collection<Entity> found = new ArrayList<>();
+                    for (Entity entity : entities) {
+                        if (entity.getBoundingBox().overlaps(area)) {
+                            found.add(entity);
+                        }
+                    }
+                    return found;
+                }
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Create a standing entity with a player sized hitbox.
+     *
+     * @param player Whether the entity is a player
+     * @param location Where the entity stands
+     * @return The entity
+     */
+    private static Entity entity(boolean player, Location location) {
+        UUID id = UUID.randomUUID();
+        BoundingBox box = new BoundingBox(location.getX() - 0.3, location.getY(), location.getZ() - 0.3,
+                location.getX() + 0.3, location.getY() + 1.8, location.getZ() + 0.3);
+        Class<?> type = player ? Player.class : Entity.class;
+        return (Entity) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getUniqueId":
+                    return id;
+                case "getLocation":
+                    return location.clone();
+                case "getWorld":
+                    return location.getWorld();
+                case "getBoundingBox":
+                    return box.clone();
+                case "getName":
+                    return id.toString();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}